@@ -0,0 +1,218 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ssc.rockfactory.RockFactory;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+import com.distocraft.dc5000.etl.parser.ParseSession;
+import com.distocraft.dc5000.etl.parser.ParserDebugger;
+import com.distocraft.dc5000.etl.parser.SourceFile;
+import com.distocraft.dc5000.repository.cache.DFormat;
+
+/**
+ * Common helpers of the ASCIIParser benchmarks.
+ *
+ */
+public final class BenchmarkSupport {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final Logger LOG = Logger.getLogger("etl.bench");
+
+    static {
+        LOG.setLevel(Level.WARNING);
+    }
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Bytes and rows handled by a benchmark, reported by JMH as rates per second next to the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public long bytes;
+
+        public long rows;
+
+        @Setup
+        public void reset() {
+            bytes = 0;
+            rows = 0;
+        }
+    }
+
+    /**
+     * Creates horizontal file data: a header row and rows of columns.
+     */
+    static byte[] horizontal(final int rows, final int columns, final String colDelim, final String rowDelim) {
+        final StringBuilder sb = new StringBuilder(rows * columns * 8);
+        for (int c = 0; c < columns; c++) {
+            if (c > 0) {
+                sb.append(colDelim);
+            }
+            sb.append("pmCounter").append(c);
+        }
+        sb.append(rowDelim);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (c > 0) {
+                    sb.append(colDelim);
+                }
+                sb.append((r * 31 + c * 17) % 100000);
+            }
+            sb.append(rowDelim);
+        }
+        return sb.toString().getBytes(UTF8);
+    }
+
+    static File write(final byte[] data, final String name) throws IOException {
+        final File file = File.createTempFile(name, ".txt");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    static SourceFile sourceFile(final File file, final Properties properties) throws Exception {
+        final Constructor<SourceFile> constructor = SourceFile.class.getDeclaredConstructor(new Class[] { File.class, Properties.class,
+                RockFactory.class, RockFactory.class, ParseSession.class, ParserDebugger.class, Logger.class });
+        constructor.setAccessible(true);
+        return constructor.newInstance(new Object[] { file, properties, null, null, null, null, null });
+    }
+
+    /**
+     * Returns a measurement file that discards the data and counts saved rows in the given counters.
+     */
+    static MeasurementFile measurementFile(final Throughput throughput) {
+        return (MeasurementFile) Proxy.newProxyInstance(MeasurementFile.class.getClassLoader(), new Class[] { MeasurementFile.class },
+                new InvocationHandler() {
+
+                    private final DFormat dataformat = new DFormat("ifname", "tid", "dfid", "bench", "trID");
+
+                    private int values;
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        final String name = method.getName();
+                        if ("addData".equals(name)) {
+                            values += args.length == 1 ? ((Map<?, ?>) args[0]).size() : 1;
+                        } else if ("saveData".equals(name)) {
+                            if (throughput != null) {
+                                throughput.rows++;
+                            }
+                            values = 0;
+                        } else if ("isOpen".equals(name)) {
+                            return Boolean.TRUE;
+                        } else if ("getDataformat".equals(name)) {
+                            return dataformat;
+                        } else if ("hashCode".equals(name)) {
+                            return values;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Measurement file that binds the values like the engine does: addData puts into a HashMap and saveData hands the map over and clears
+     * it. Used where the cost of binding the values is measured, without the reflection of a proxy.
+     */
+    static final class MapMeasurementFile implements MeasurementFile {
+
+        private final DFormat dataformat = new DFormat("ifname", "tid", "dfid", "bench", "trID");
+
+        private final Map<String, String> data = new HashMap<String, String>();
+
+        private long saved;
+
+        private int lastSize;
+
+        @Override
+        public void addData(final String key, final String value) {
+            data.put(key, value);
+        }
+
+        @Override
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        public void addData(final Map map) {
+            data.putAll(map);
+        }
+
+        @Override
+        public void saveData() {
+            lastSize = data.size();
+            data.clear();
+            saved++;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public DFormat getDataformat() {
+            return dataformat;
+        }
+
+        long getSaved() {
+            return saved;
+        }
+
+        /**
+         * @return number of values of the last saved row
+         */
+        int getLastSize() {
+            return lastSize;
+        }
+    }
+
+    /**
+     * Parser writing into a {@link BenchmarkSupport#measurementFile(Throughput)}.
+     */
+    static class StubbedParser extends ASCIIParser {
+
+        private final Throughput throughput;
+
+        StubbedParser(final Throughput throughput) {
+            this.throughput = throughput;
+            init(null, "bench", "bench", "bench", "");
+        }
+
+        @Override
+        protected MeasurementFile createMeasurementFile(final SourceFile sf, final String tagID) {
+            return measurementFile(throughput);
+        }
+    }
+
+}
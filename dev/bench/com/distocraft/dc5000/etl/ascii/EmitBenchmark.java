@@ -0,0 +1,91 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * Writing split rows to a measurement file that binds the values into a HashMap like the engine, one operation is one row. Compares
+ * writing every cell with addData(key, value) and the constants one by one to the row writer.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EmitBenchmark {
+
+    private static final int ROWS = 100;
+
+    @Param({ "10", "500" })
+    public int columns;
+
+    private final List<String> header = new ArrayList<String>();
+
+    private String[][] rows;
+
+    private ColumnPlan plan;
+
+    private MeasurementFile mFile;
+
+    private RowWriter writer;
+
+    @Setup
+    public void setUp() {
+        for (int c = 0; c < columns; c++) {
+            header.add("pmCounter" + c);
+        }
+        rows = new String[ROWS][columns];
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < columns; c++) {
+                rows[r][c] = Integer.toString(r * 31 + c);
+            }
+        }
+        plan = ColumnPlan.create(header, ASCIIParser.DATATIME_SKIPPED, "", ASCIIParser.ROW_WIDTH_DEFAULT);
+        mFile = new BenchmarkSupport.MapMeasurementFile();
+        writer = new RowWriter(mFile, plan, new Diagnostics(BenchmarkSupport.LOG),
+                new ParserStats.Recorder(new ParserStats("EmitBenchmark")), new ParserStats.RowSampler());
+        writer.setConstant("filename", "bench.txt");
+        writer.setConstant("DC_SUSPECTFLAG", "");
+        writer.setConstant("DIRNAME", "/eniq/data/pmdata");
+        writer.setConstant("JVM_TIMEZONE", "+0000");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void addDataPerCell(final BenchmarkSupport.Throughput throughput) throws Exception {
+        for (int r = 0; r < ROWS; r++) {
+            final String[] row = rows[r];
+            for (int c = 0; c < row.length; c++) {
+                mFile.addData(header.get(c).trim(), row[c].trim());
+            }
+            mFile.addData("filename", "bench.txt");
+            mFile.addData("DC_SUSPECTFLAG", "");
+            mFile.addData("DIRNAME", "/eniq/data/pmdata");
+            mFile.addData("JVM_TIMEZONE", "+0000");
+            mFile.saveData();
+        }
+        throughput.rows += ROWS;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void rowWriter(final BenchmarkSupport.Throughput throughput) {
+        for (int r = 0; r < ROWS; r++) {
+            writer.write(rows[r], plan.columnsToWrite(rows[r].length), null, null, r, -1);
+        }
+        throughput.rows += ROWS;
+    }
+
+}
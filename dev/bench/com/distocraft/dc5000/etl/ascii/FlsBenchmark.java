@@ -0,0 +1,68 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Handing FLS notifications to the dispatcher, the cost seen by the parser thread. The sender discards the notifications.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlsBenchmark {
+
+    private static final Logger DISPATCHER_LOG = Logger.getLogger("etl.parser.ASCII.FlsDispatcher");
+
+    /**
+     * Number of different nodes, a small number means most notifications are coalesced.
+     */
+    @Param({ "10", "100000" })
+    public int nodes;
+
+    private FlsNotification[] notifications;
+
+    private FlsDispatcher dispatcher;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        DISPATCHER_LOG.setLevel(Level.WARNING);
+        notifications = new FlsNotification[nodes];
+        for (int i = 0; i < nodes; i++) {
+            notifications[i] = new FlsNotification("ERBS", "SubNetwork=ONRM_ROOT,MeContext=ERBS" + i, "enm1");
+        }
+        dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+            @Override
+            public void send(final FlsNotification notification) {
+                // discarded
+            }
+        }, 1, 10000, 0, 0, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Benchmark
+    public boolean submit() {
+        final FlsNotification notification = notifications[next];
+        next = next + 1 == notifications.length ? 0 : next + 1;
+        return dispatcher.submit(notification);
+    }
+
+}
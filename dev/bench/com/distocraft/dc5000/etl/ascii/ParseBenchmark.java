@@ -0,0 +1,92 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.distocraft.dc5000.etl.parser.SourceFile;
+
+/**
+ * Parsing whole files written by {@link WorkloadGenerator} with ASCIIParser.parse() into a stub measurement file.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+    @Param({ "10000" })
+    public int rows;
+
+    @Param({ "50", "500" })
+    public int columns;
+
+    @Param({ "pipe", "regex" })
+    public String delimiter;
+
+    @Param({ "0", "1", "2" })
+    public int inputMode;
+
+    private long horizontalSize;
+
+    private SourceFile horizontal;
+
+    private long verticalSize;
+
+    private SourceFile vertical;
+
+    @Setup
+    public void setUp() throws Exception {
+        final WorkloadGenerator generator = new WorkloadGenerator(1);
+
+        final File hdir = Files.createTempDirectory("ParseBenchmark").toFile();
+        final Properties properties = generator.horizontal(hdir, 1, rows, columns, delimiter, false, false);
+        properties.setProperty("input_mode", Integer.toString(inputMode));
+        final File hfile = generated(hdir);
+        horizontalSize = hfile.length();
+        horizontal = BenchmarkSupport.sourceFile(hfile, properties);
+
+        // a node with a row written for each of its cells
+        final File vdir = Files.createTempDirectory("ParseBenchmarkVertical").toFile();
+        final Properties vproperties = generator.vertical(vdir, 1, rows / 100, columns);
+        vproperties.setProperty("input_mode", Integer.toString(inputMode));
+        final File vfile = generated(vdir);
+        verticalSize = vfile.length();
+        vertical = BenchmarkSupport.sourceFile(vfile, vproperties);
+    }
+
+    private static File generated(final File dir) {
+        dir.deleteOnExit();
+        File data = null;
+        for (File file : dir.listFiles()) {
+            file.deleteOnExit();
+            if (!file.getName().equals(WorkloadGenerator.PROPERTIES_FILE)) {
+                data = file;
+            }
+        }
+        return data;
+    }
+
+    @Benchmark
+    public void horizontal(final BenchmarkSupport.Throughput throughput) throws Exception {
+        new BenchmarkSupport.StubbedParser(throughput).parse(horizontal, "bench", "bench", "bench");
+        throughput.bytes += horizontalSize;
+    }
+
+    @Benchmark
+    public void vertical(final BenchmarkSupport.Throughput throughput) throws Exception {
+        new BenchmarkSupport.StubbedParser(throughput).parse(vertical, "bench", "bench", "bench");
+        throughput.bytes += verticalSize;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading rows of a file with the row scanners, the readLine stage of the parser.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RowScannerBenchmark {
+
+    @Param({ "10000" })
+    public int rows;
+
+    @Param({ "50", "500" })
+    public int columns;
+
+    @Param({ "\n", "\r\n" })
+    public String rowDelimiter;
+
+    private byte[] data;
+
+    private File file;
+
+    private Delimiter delimiter;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkSupport.horizontal(rows, columns, "|", rowDelimiter);
+        file = BenchmarkSupport.write(data, "RowScannerBenchmark");
+        delimiter = Delimiter.compile(rowDelimiter);
+    }
+
+    @Benchmark
+    public void reader(final BenchmarkSupport.Throughput throughput, final Blackhole bh) throws Exception {
+        scan(new ReaderRowScanner(new InputStreamReader(new ByteArrayInputStream(data), BenchmarkSupport.UTF8), delimiter, -1, 10000),
+                throughput, bh);
+    }
+
+    @Benchmark
+    public void stream(final BenchmarkSupport.Throughput throughput, final Blackhole bh) throws Exception {
+        scan(new ByteRowScanner(new ByteArrayInputStream(data), delimiter, -1, BenchmarkSupport.UTF8, ByteRowScanner.MIN_READ_BUFFER_SIZE),
+                throughput, bh);
+    }
+
+    @Benchmark
+    public void channel(final BenchmarkSupport.Throughput throughput, final Blackhole bh) throws Exception {
+        scan(new ByteRowScanner(new FileInputStream(file).getChannel(), delimiter, -1, BenchmarkSupport.UTF8, false,
+                ByteRowScanner.MIN_READ_BUFFER_SIZE), throughput, bh);
+    }
+
+    @Benchmark
+    public void mapped(final BenchmarkSupport.Throughput throughput, final Blackhole bh) throws Exception {
+        scan(new ByteRowScanner(new FileInputStream(file).getChannel(), delimiter, -1, BenchmarkSupport.UTF8, true,
+                ByteRowScanner.MAP_WINDOW_SIZE), throughput, bh);
+    }
+
+    private void scan(final RowScanner scanner, final BenchmarkSupport.Throughput throughput, final Blackhole bh) throws Exception {
+        try {
+            String row;
+            while ((row = scanner.nextRow()) != null) {
+                bh.consume(row);
+                throughput.rows++;
+            }
+            throughput.bytes += data.length;
+        } finally {
+            scanner.close();
+        }
+    }
+
+}
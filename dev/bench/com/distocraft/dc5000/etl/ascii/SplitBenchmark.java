@@ -0,0 +1,62 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Splitting a row into columns, one operation is one row.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SplitBenchmark {
+
+    @Param({ "10", "100", "2000" })
+    public int columns;
+
+    /**
+     * Literal character, literal string and regexp delimiter.
+     */
+    @Param({ "\\|", "\t", ";;", "\\s*\\|\\s*" })
+    public String columnDelimiter;
+
+    private String row;
+
+    private Delimiter delimiter;
+
+    @Setup
+    public void setUp() {
+        delimiter = Delimiter.compile(columnDelimiter);
+        final String separator = delimiter.isLiteral() ? delimiter.getLiteral() : " | ";
+        final StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < columns; c++) {
+            if (c > 0) {
+                sb.append(separator);
+            }
+            sb.append(c * 7919 % 100000);
+        }
+        row = sb.toString();
+    }
+
+    @Benchmark
+    public String[] split(final BenchmarkSupport.Throughput throughput) {
+        throughput.rows++;
+        throughput.bytes += row.length();
+        return delimiter.split(row);
+    }
+
+    @Benchmark
+    public String[] stringSplit() {
+        return row.split(columnDelimiter);
+    }
+
+}
@@ -1,34 +1,41 @@
 package com.distocraft.dc5000.etl.ascii;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.rmi.Naming;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import org.xml.sax.helpers.DefaultHandler;
 
-import com.distocraft.dc5000.common.RmiUrlFactory;
 import com.distocraft.dc5000.common.StaticProperties;
 import com.distocraft.dc5000.etl.parser.Main;
 import com.distocraft.dc5000.etl.parser.MeasurementFile;
 import com.distocraft.dc5000.etl.parser.Parser;
 import com.distocraft.dc5000.etl.parser.SourceFile;
 import com.distocraft.dc5000.etl.parser.utils.FlsUtils;
-import com.ericsson.eniq.enminterworking.EnmInterCommonUtils;
-import com.ericsson.eniq.enminterworking.IEnmInterworkingRMI;
 
 /**
  * Adapter implementation that reads generic column (and row) determined ASCII measurement data. <br>
@@ -88,6 +95,15 @@ import com.ericsson.eniq.enminterworking.IEnmInterworkingRMI;
  * <td/>
  * </tr>
  * <tr>
+ * <td>Column widths</td>
+ * <td>column_widths</td>
+ * <td>Comma separated widths of the columns of a fixed width file in characters, for example 10,5,8. If defined, the columns of the header
+ * and data rows are sliced at these offsets instead of being split by column_delimiter. header_row is still separated by column_delimiter.
+ * Rows shorter than the layout are narrower rows for row_width_mode, text after the last column is an extra column unless it is only
+ * whitespace. Fixed width files are never parsed in parallel chunks.</td>
+ * <td>&nbsp;</td>
+ * </tr>
+ * <tr>
  * <td>Datatime mode</td>
  * <td>datatime_mode</td>
  * <td>Determines how fixed column DATATIME is discovered from this file.<br>
@@ -121,7 +137,7 @@ import com.ericsson.eniq.enminterworking.IEnmInterworkingRMI;
  * <td>&nbsp;</td>
  * <td>row_delimiter_size</td>
  * <td>Defines how many characters is deleted row delimiter is removed.</td>
- * <td>2</td>
+ * <td>Length of the matched row delimiter</td>
  * </tr>
  * <tr>
  * <td>&nbsp;</td>
@@ -129,6 +145,92 @@ import com.ericsson.eniq.enminterworking.IEnmInterworkingRMI;
  * <td>Defines the size of the inner buffer size, how many characters are read from datafile at one time.</td>
  * <td>10000</td>
  * </tr>
+ * <tr>
+ * <td>Input mode</td>
+ * <td>input_mode</td>
+ * <td>Defines how the sourcefile is read.<br>
+ * 0 = file is read from its InputStream.<br>
+ * 1 = file is read from its FileChannel into pooled direct buffers.<br>
+ * 2 = file is mapped into memory.<br>
+ * Rows are searched from the bytes of the file and rows containing only ASCII characters are not decoded. This requires a row delimiter
+ * without regexp characters and an ASCII compatible charset (UTF-8, US-ASCII, ISO-8859-x, windows-125x), otherwise the file is read through
+ * a character stream.</td>
+ * <td>0 (InputStream)</td>
+ * </tr>
+ * <tr>
+ * <td>Row width mode</td>
+ * <td>row_width_mode</td>
+ * <td>Defines how rows with a different number of columns than the header are handled.<br>
+ * 0 = rows wider than the header are skipped, narrower rows are written.<br>
+ * 1 = only rows with as many columns as the header are written.<br>
+ * 2 = columns exceeding the header are ignored, narrower rows are written.<br>
+ * Not used if columns are identified by order number.</td>
+ * <td>0</td>
+ * </tr>
+ * <tr>
+ * <td>Parallel threshold</td>
+ * <td>parallel_threshold</td>
+ * <td>Size of sourcefile in bytes from which the data rows are read and split into columns in parallel chunks. Requires that the file is
+ * read as bytes and that the beginning of the row delimiter is not equal to its end. Not used with vertical traversing. 0 disables parallel
+ * parsing.</td>
+ * <td>0</td>
+ * </tr>
+ * <tr>
+ * <td>Parallel chunk size</td>
+ * <td>parallel_chunk_size</td>
+ * <td>Size of a chunk in bytes when file is parsed in parallel.</td>
+ * <td>16777216</td>
+ * </tr>
+ * <tr>
+ * <td>Parallel ordered</td>
+ * <td>parallel_ordered</td>
+ * <td>If true rows parsed in parallel are written in the order of the file, otherwise in the order the chunks are ready.</td>
+ * <td>true</td>
+ * </tr>
+ * <tr>
+ * <td>Parallel memory</td>
+ * <td>parallel_memory</td>
+ * <td>Bytes of the file in chunks that are parsed, waiting or written at the same time when a file is parsed in parallel. The heap used is a
+ * few times this, as the rows are kept split into Strings. At least one chunk is parsed at a time, at most two per thread of the pool.</td>
+ * <td>67108864</td>
+ * </tr>
+ * <tr>
+ * <td>Gzip background</td>
+ * <td>gzip_background</td>
+ * <td>Gzip compressed sourcefiles are detected from their first bytes and decompressed while they are parsed. If true, the file is
+ * decompressed ahead of the parser by a background thread. Compressed files are never parsed in parallel chunks.</td>
+ * <td>false</td>
+ * </tr>
+ * <tr>
+ * <td>Value dictionary size</td>
+ * <td>value_dictionary_size</td>
+ * <td>Number of distinct cell values kept in a table of the parser, so recurring values like node types and zero counters are shared by
+ * all rows instead of being created again for every row. Rounded up to a power of two. Hits and misses of the table are counted in
+ * {@link ParserStats}. 0 disables the table.</td>
+ * <td>0</td>
+ * </tr>
+ * <tr>
+ * <td>Vertical spill threshold</td>
+ * <td>vertical_spill_threshold</td>
+ * <td>Number of writeForEach values of a column kept in memory while a vertical traverse file is read. Further values are kept in a
+ * temporary file until the rows are written at the end of the file. 0 keeps all values in memory.</td>
+ * <td>100000</td>
+ * </tr>
+ * <tr>
+ * <td>Record boundary</td>
+ * <td>record_boundary</td>
+ * <td>Regular expression of the line that separates the records of a vertical traverse file containing several nodes. The rows of a record
+ * are written when the record ends, so the file is parsed in one pass. If the expression has a group, the first group is the eNodeBName of
+ * the record that follows, otherwise the eNodeBName from fileNameFormat is used for all records. Empty means one record per file.</td>
+ * <td>&nbsp;</td>
+ * </tr>
+ * <tr>
+ * <td>Reject directory</td>
+ * <td>reject_dir</td>
+ * <td>Directory where the skipped rows of a sourcefile are written with their line number, byte offset and error code, into a file named
+ * after the sourcefile with suffix .rejected. The file is created only if rows are skipped. Empty disables writing of skipped rows.</td>
+ * <td>&nbsp;</td>
+ * </tr>
  * </table>
  * </table> <br>
  * <br>
@@ -160,6 +262,17 @@ import com.ericsson.eniq.enminterworking.IEnmInterworkingRMI;
  * <td>&nbsp;</td>
  * </tr>
  * </table>
+ * <br>
+ * A worker parses ASCIIParser.concurrentFiles files (StaticProperties, default 1) at the same time. Each concurrent file is parsed by its
+ * own parser instance, so the state of a file is never shared. Main is called by one thread at a time. If ASCIIParser.prefetchFiles is
+ * greater than 0, that many files are taken ahead of the parser and files not larger than ASCIIParser.prefetchMaxSize bytes (default
+ * 1048576) are read into memory by ASCIIParser.prefetchThreads threads (default 2) while the previous files are parsed. Files taken ahead
+ * are parsed also if the worker stops early. <br>
+ * <br>
+ * Files, rows, skipped lines and the time spent in each stage of parsing are counted per techpack, set and worker and can be followed
+ * through JMX, see {@link ParserStats}. Throughput and percentiles of the parse time of files are logged periodically, see
+ * {@link MetricsReporter}. Skipped rows are counted by {@link RejectReason}, logged sampled and asynchronously and written to a reject
+ * file if reject_dir is set, see {@link Diagnostics}.
  * 
  * @author lemminkainen, savinen
  * 
@@ -184,6 +297,18 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 
     public static final int DATAID_FROM_COLUMNS = 2;
 
+    public static final int INPUT_FROM_STREAM = 0;
+
+    public static final int INPUT_FROM_CHANNEL = 1;
+
+    public static final int INPUT_FROM_MAPPED = 2;
+
+    public static final int ROW_WIDTH_DEFAULT = 0;
+
+    public static final int ROW_WIDTH_STRICT = 1;
+
+    public static final int ROW_WIDTH_TRUNCATE = 2;
+
     protected BufferedReader br;
 
     private List counterList;
@@ -192,16 +317,16 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 
     private Logger log;
 
-    private String rowDelim;
+    private Delimiter rowDelimiter;
+
+    private Delimiter colDelimiter;
 
-    private String colDelim;
+    private ColumnWidths columnWidths;
 
     private int tagIDMode;
 
     private int dataIDMode;
 
-    private String headerRow;
-
     private int datatimeMode;
 
     private String datatimeColumn;
@@ -214,13 +339,45 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 
     private Pattern timePattern;
 
-    private String block = "";
+    private RowScanner scanner;
 
     private int bufferSize = 10000;
 
-    private int rowDelimLength = 1;
-    
-    private String UTF8_BOM = "\uFEFF";
+    private int rowDelimLength = -1;
+
+    private int inputMode = INPUT_FROM_STREAM;
+
+    private int rowWidthMode = ROW_WIDTH_DEFAULT;
+
+    private ColumnPlan columnPlan;
+
+    private RowWriter rowWriter;
+
+    private String[] fieldValues = new String[64];
+
+    private InputStream input;
+
+    private Charset charset;
+
+    private long parallelThreshold;
+
+    private int parallelChunkSize;
+
+    private boolean parallelOrdered;
+
+    private long parallelMemory;
+
+    private ParallelRowReader chunkReader;
+
+    private boolean gzipBackground;
+
+    private SourceFilePrefetcher.Prefetched prefetched;
+
+    private ParserStats.Recorder recorder;
+
+    private Diagnostics diagnostics;
+
+    private ValueDictionary dictionary;
 
 
     //***************** Worker stuff ****************************
@@ -240,10 +397,18 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 
 	private boolean isFlsEnabled = false;
 
+	private boolean isFlsChecked = false;
+
+	private String enmHostName = null;
+
+	private String lastFlsNodeFdn = null;
+
+	private String lastFlsNeType = null;
+
+	private final Set<FlsNotification> flsNotifications = new LinkedHashSet<>();
+
 	private String serverRole = null;
 
-	private IEnmInterworkingRMI multiEs;
-	
 	private Map<String, String> ossIdToHostNameMap;
 	
 	private boolean isVerticalTraverse;
@@ -252,7 +417,18 @@ public class ASCIIParser extends DefaultHandler implements Parser {
     
     private String eNodeBName = "";
     
-    private Map<String, List<String>> writeForEachMap;
+    private Map<String, SpillList> writeForEachMap;
+
+    private int verticalSpillThreshold;
+
+    private Pattern recordBoundary;
+
+    /**
+     * Select the timed rows when rows are read and written, kept over the files of the parser.
+     */
+    private final ParserStats.RowSampler readSampler = new ParserStats.RowSampler();
+
+    private final ParserStats.RowSampler writeSampler = new ParserStats.RowSampler();
     
     private Map<String, String> verticalTraverseData;
 
@@ -281,6 +457,8 @@ public class ASCIIParser extends DefaultHandler implements Parser {
         }
 
         log = Logger.getLogger("etl." + techPack + "." + setType + "." + setName + ".parser.ASCII" + logWorkerName);
+        recorder = new ParserStats.Recorder(ParserStats.getInstance(techPack, setName, workerName));
+        diagnostics = new Diagnostics(log);
     }
 
     @Override
@@ -294,20 +472,34 @@ public class ASCIIParser extends DefaultHandler implements Parser {
     	try {
 
     		this.status = 2;
-    		SourceFile sf = null;
     		parseStartTime = System.currentTimeMillis();
-    		while ((sf = mainParserObject.nextSourceFile()) != null) {
-
-    			try {
-    				fileCount++;
-    				fileSize += sf.fileSize();                	
-    				mainParserObject.preParse(sf);
-    				parse(sf, techPack, setType, setName);
-    				mainParserObject.postParse(sf);
-    			} catch (final Exception e) {
-    				mainParserObject.errorParse(e, sf);
-    			} finally {
-    				mainParserObject.finallyParse(sf);
+    		final int concurrentFiles = getStaticInt("ASCIIParser.concurrentFiles", 1);
+    		final int prefetchFiles = getStaticInt("ASCIIParser.prefetchFiles", 0);
+    		final SourceFilePrefetcher prefetcher = prefetchFiles > 0 ? new SourceFilePrefetcher(new SourceFilePrefetcher.FileSource() {
+
+    			@Override
+    			public SourceFile next() throws Exception {
+    				synchronized (mainParserObject) {
+    					return mainParserObject.nextSourceFile();
+    				}
+    			}
+    		}, prefetchFiles, getStaticInt("ASCIIParser.prefetchMaxSize", 1048576), getStaticInt("ASCIIParser.prefetchThreads", 2), log) : null;
+    		try {
+    			if (concurrentFiles > 1) {
+    				parseFilesConcurrently(concurrentFiles, prefetcher);
+    			} else {
+    				parseFiles(prefetcher);
+    			}
+    		} finally {
+    			if (prefetcher != null) {
+    				// files already taken from Main are parsed also when parsing stopped early
+    				for (SourceFile sf : prefetcher.close()) {
+    					try {
+    						parseFile(sf);
+    					} catch (final Exception e) {
+    						log.log(Level.WARNING, "Parsing of prefetched file " + sf.getName() + " failed", e);
+    					}
+    				}
     			}
     		}
     		totalParseTime = System.currentTimeMillis() - parseStartTime;
@@ -324,6 +516,140 @@ public class ASCIIParser extends DefaultHandler implements Parser {
     	}
     }
 
+    /**
+     * Parses files one by one until there are no more files to parse.
+     * 
+     * @param prefetcher
+     *            source of the files read ahead or null to take the files from Main
+     */
+    private void parseFiles(final SourceFilePrefetcher prefetcher) throws Exception {
+    	SourceFile sf = null;
+    	while ((sf = nextSourceFile(prefetcher)) != null) {
+
+    		try {
+    			parseFile(sf);
+    		} finally {
+    			if (prefetched != null) {
+    				prefetched.release();
+    				prefetched = null;
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * Parses one file taken from Main and reports the result to Main. Main is not thread safe, so its methods are called holding its lock
+     * when files are parsed concurrently. The lock is not held while the file is parsed.
+     */
+    private void parseFile(final SourceFile sf) throws Exception {
+    	try {
+    		fileCount++;
+    		fileSize += sf.fileSize();                	
+    		synchronized (mainParserObject) {
+    			mainParserObject.preParse(sf);
+    		}
+    		parse(sf, techPack, setType, setName);
+    		synchronized (mainParserObject) {
+    			mainParserObject.postParse(sf);
+    		}
+    	} catch (final Exception e) {
+    		synchronized (mainParserObject) {
+    			mainParserObject.errorParse(e, sf);
+    		}
+    	} finally {
+    		synchronized (mainParserObject) {
+    			mainParserObject.finallyParse(sf);
+    		}
+    	}
+    }
+
+    private SourceFile nextSourceFile(final SourceFilePrefetcher prefetcher) throws Exception {
+    	if (prefetcher == null) {
+    		synchronized (mainParserObject) {
+    			return mainParserObject.nextSourceFile();
+    		}
+    	}
+    	prefetched = prefetcher.next();
+    	return prefetched == null ? null : prefetched.getSourceFile();
+    }
+
+    /**
+     * Parses several files at the same time. Every thread has its own parser instance holding the state of the file it parses, and takes
+     * the next file when the previous one is finished. The threads share Main and call it one at a time, see {@link #parseFile(SourceFile)}.
+     * Returns when all threads are out of files.
+     */
+    private void parseFilesConcurrently(final int concurrentFiles, final SourceFilePrefetcher prefetcher) throws Exception {
+
+    	final String threadName = workerName.length() > 0 ? workerName : techPack + "." + setName;
+    	final ExecutorService executor = Executors.newFixedThreadPool(concurrentFiles, new ThreadFactory() {
+
+    		private final AtomicInteger count = new AtomicInteger();
+
+    		@Override
+    		public Thread newThread(final Runnable r) {
+    			final Thread t = new Thread(r, "ASCIIParser-" + threadName + "-" + count.incrementAndGet());
+    			t.setDaemon(true);
+    			return t;
+    		}
+    	});
+
+    	final List<ASCIIParser> parsers = new ArrayList<>();
+    	final List<Future<?>> futures = new ArrayList<>();
+    	try {
+    		for (int i = 0; i < concurrentFiles; i++) {
+    			final ASCIIParser parser = i == 0 ? this : createConcurrentParser();
+    			if (parser != this) {
+    				parser.init(mainParserObject, techPack, setType, setName, workerName);
+    			}
+    			parsers.add(parser);
+    			futures.add(executor.submit(new Callable<Void>() {
+
+    				@Override
+    				public Void call() throws Exception {
+    					parser.parseFiles(prefetcher);
+    					return null;
+    				}
+    			}));
+    		}
+    		log.fine("Parsing " + concurrentFiles + " files concurrently");
+
+    		for (Future<?> future : futures) {
+    			try {
+    				future.get();
+    			} catch (final ExecutionException e) {
+    				log.log(Level.WARNING, "Concurrent parser failed to exception", e.getCause());
+    			}
+    		}
+    	} finally {
+    		executor.shutdownNow();
+    	}
+
+    	for (ASCIIParser parser : parsers) {
+    		if (parser != this) {
+    			fileCount += parser.fileCount;
+    			fileSize += parser.fileSize;
+    		}
+    	}
+    }
+
+    /**
+     * Creates the parser instance of another thread parsing files at the same time.
+     */
+    ASCIIParser createConcurrentParser() {
+    	return new ASCIIParser();
+    }
+
+    /**
+     * Returns an integer from StaticProperties or the default value if the property is not defined or it is invalid.
+     */
+    private int getStaticInt(final String name, final int defaultValue) {
+    	try {
+    		return Integer.parseInt(StaticProperties.getProperty(name, Integer.toString(defaultValue)).trim());
+    	} catch (final Exception e) {
+    		return defaultValue;
+    	}
+    }
+
     //***************** Worker stuff ****************************
 
     /**
@@ -339,32 +665,58 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 
         this.filename = sf.getName();
         MeasurementFile mFile = null;
-        block = "";
+        boolean parsed = false;
+        scanner = null;
+        input = null;
+        rowWriter = null;
+        // a node taken from a record boundary belongs to the previous file
+        eNodeBName = "";
+        resetFlsData();
+
+        if (recorder == null) {
+            recorder = new ParserStats.Recorder(ParserStats.getInstance(techPack, setName, workerName));
+            diagnostics = new Diagnostics(log);
+        }
+        recorder.fileStarted();
+        long stageStart = System.nanoTime();
 
         try {
 
-            colDelim = sf.getProperty("column_delimiter", "\t");
-            if (colDelim.length() == 0) {
-                colDelim = "\t";
-            }
-            log.finest("col_delim: " + colDelim);
-
-            rowDelim = sf.getProperty("row_delimiter", "\n");
-            if (rowDelim.length() == 0) {
-                rowDelim = "\n";
+            final ParseProfile profile = ParseProfile.getProfile(sf, techPack, setType, setName, log);
+            diagnostics.fileStarted(profile.getRejectDir(), filename);
+
+            colDelimiter = profile.getColDelimiter();
+            rowDelimiter = profile.getRowDelimiter();
+            tagIDMode = profile.getTagIDMode();
+            tagID = profile.getTagID();
+            dataIDMode = profile.getDataIDMode();
+            columnWidths = profile.getColumnWidths();
+            datatimeMode = profile.getDatatimeMode();
+            datatimeColumn = profile.getDatatimeColumn();
+            bufferSize = profile.getBufferSize();
+            rowDelimLength = profile.getRowDelimLength();
+            inputMode = profile.getInputMode();
+            rowWidthMode = profile.getRowWidthMode();
+            parallelThreshold = profile.getParallelThreshold();
+            parallelChunkSize = profile.getParallelChunkSize();
+            parallelOrdered = profile.isParallelOrdered();
+            parallelMemory = profile.getParallelMemory();
+            gzipBackground = profile.isGzipBackground();
+
+            final int dictionarySize = profile.getValueDictionarySize();
+            if (dictionarySize <= 0) {
+                dictionary = null;
+            } else if (dictionary == null || dictionary.getCapacity() != ValueDictionary.capacity(dictionarySize)) {
+                dictionary = new ValueDictionary(dictionarySize);
             }
-            log.finest("row_delim: " + rowDelim);
-
-            tagIDMode = Integer.parseInt(sf.getProperty("tag_id_mode", "" + TAGID_FROM_FILENAME));
-            log.finest("tag_id_mode: " + tagIDMode);
-
-            tagID = sf.getProperty("tag_id", "(.+)");
-            log.finest("tag_id: " + tagID);
+            isVerticalTraverse = profile.isVerticalTraverse();
+            writeForEachColumns = profile.getWriteForEachColumns();
+            verticalSpillThreshold = profile.getVerticalSpillThreshold();
+            recordBoundary = profile.getRecordBoundary();
 
             try {
-                if (tagIDMode == TAGID_FROM_FILENAME) {
-                    final String patt = tagID;
-                    tagPattern = Pattern.compile(patt);
+                tagPattern = profile.getTagPattern();
+                if (tagIDMode == TAGID_FROM_FILENAME && tagPattern != null) {
                     final Matcher m = tagPattern.matcher(filename);
                     if (m.find()) {
                         tagID = m.group(1);
@@ -376,30 +728,10 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 
             }
 
-            dataIDMode = Integer.parseInt(sf.getProperty("data_id_mode", "" + DATAID_FROM_COLUMNS));
-            log.finest("data_id_mode: " + dataIDMode);
-
-            headerRow = sf.getProperty("header_row", "");
-            log.finest("header_row: " + headerRow);
-
-            datatimeMode = Integer.parseInt(sf.getProperty("datatime_mode", "" + DATATIME_SKIPPED));
-            log.finest("datatime_mode: " + datatimeMode);
-
-            datatimeColumn = sf.getProperty("datatime_column", "");
-            log.finest("datatime_column: " + datatimeColumn);
-
-            bufferSize = Integer.parseInt(sf.getProperty("buffer_size", Integer.toString(bufferSize)));
-            log.finest("buffer_size: " + bufferSize);
-
-            rowDelimLength = Integer.parseInt(sf.getProperty("row_delimiter_size", Integer.toString(rowDelim.length())));
-            log.finest("row_delimiter_size: " + rowDelimLength);
-                       
-            String fileNamePattern = sf.getProperty("fileNameFormat", "");
-            log.finest("The pattern to check eNodeBName is " +fileNamePattern);
-            
-            if (fileNamePattern != null && !fileNamePattern.equals("")) {
+            final String fileNamePattern = profile.getFileNameFormat();
+            if (!fileNamePattern.equals("")) {
             	         			
-            	String result = transformFileVariables(filename, fileNamePattern);
+            	String result = transformFileVariables(filename, profile.getFileNamePattern());
                 if (result != null) {
                 	eNodeBName = result;
                 	log.log(Level.FINEST, "the file name "+filename+" matches with the described pattern "+fileNamePattern);
@@ -410,22 +742,13 @@ public class ASCIIParser extends DefaultHandler implements Parser {
                 }
             }
                                   
-            String writeForEach = sf.getProperty("writeForEach", "");
-            log.finest("The writeForEach is " + writeForEach);
-            
-            if (writeForEach != null && !writeForEach.equals("")) {
-            	writeForEachColumns = new HashSet<>();
-            	writeForEachColumns.addAll(Arrays.asList(writeForEach.split(",")));
+            if (writeForEachColumns != null) {
             	writeForEachMap = new HashMap<>();
             }
-            
-            isVerticalTraverse = "true".equalsIgnoreCase(sf.getProperty("verticalTraversing", "false"));
-            log.finest("isVerticalTraverse: " + isVerticalTraverse);
                  
             try {
-                if (datatimeMode == DATATIME_FROM_FILENAME) {
-                    final String patt = datatimeColumn;
-                    timePattern = Pattern.compile(patt);
+                timePattern = profile.getTimePattern();
+                if (datatimeMode == DATATIME_FROM_FILENAME && timePattern != null) {
                     final Matcher m = timePattern.matcher(filename);
                     if (m.find()) {
                         datatimeColumn = m.group(1);
@@ -436,22 +759,23 @@ public class ASCIIParser extends DefaultHandler implements Parser {
                 log.log(Level.WARNING, "Error while matching pattern " + datatimeColumn + " from filename " + filename + " for datatime_column", e);
 
             }
-            mFile = Main.createMeasurementFile(sf, tagID, techPack, setType, setName, this.workerName, log);
+            mFile = createMeasurementFile(sf, tagID);
 
             if (null == mFile.getDataformat()) {
                 throw new Exception("No Dataformat available for tagID: " + tagID);
             }
             
 
-            final int headerSkip = Integer.parseInt(sf.getProperty("header_skip", "1"));
-            log.finest("header_skip: " + headerSkip);
+            final int headerSkip = profile.getHeaderSkip();
 
-            final int headerInRow = Integer.parseInt(sf.getProperty("header_in_row", "0"));
-            log.finest("header_in_row: " + headerInRow);
+            final int headerInRow = profile.getHeaderInRow();
 
             this.counterList = new ArrayList();
 
             setData(sf);
+            if (scanner == null) {
+                scanner = new ReaderRowScanner(br, rowDelimiter, rowDelimLength, bufferSize);
+            }
 
             log.fine("Parsing File: " + sf.getName());
             String header = "";
@@ -459,16 +783,16 @@ public class ASCIIParser extends DefaultHandler implements Parser {
             if (!isVerticalTraverse) {
             	 for (int i = 0; i < headerSkip; i++) {
                      if (i == headerInRow) {
-                         header = readLine(rowDelim);
+                         header = readLine();
                      } else {
-                         readLine(rowDelim);
+                         readLine();
                      }
                  }
 
                  if (dataIDMode == DATAID_FROM_HEADER) {
-                     counterList = readHeader(header, colDelim);
+                     counterList = readHeader(header, colDelimiter);
                  } else if (dataIDMode == DATAID_FROM_CONFIG) {
-                     counterList = readHeader(headerRow, colDelim);
+                     counterList = profile.getConfiguredHeader();
                  } else if (dataIDMode == DATAID_FROM_COLUMNS) {
                      counterList = null;
                  }
@@ -476,11 +800,36 @@ public class ASCIIParser extends DefaultHandler implements Parser {
             	counterList = null;
             	verticalTraverseData = new HashMap<>();
             }
+
+            if (isVerticalTraverse) {
+                columnPlan = null;
+                rowWriter = null;
+            } else {
+                columnPlan = ColumnPlan.create(counterList, datatimeMode, datatimeColumn, rowWidthMode);
+                rowWriter = new RowWriter(mFile, columnPlan, diagnostics, recorder, writeSampler);
+                for (final Map.Entry<String, String> entry : createRowTemplate().entrySet()) {
+                    rowWriter.setConstant(entry.getKey(), entry.getValue());
+                }
+                if (datatimeMode == DATATIME_FROM_FILENAME) {
+                    rowWriter.setConstant("DATETIME_ID", datatimeColumn);
+                }
+            }
            
 
-            readDataLines(mFile);
+            final ParallelRowReader parallelReader = createParallelReader();
+            recorder.since(ParserStats.Stage.OPEN, stageStart);
+            if (parallelReader != null) {
+                readChunks(parallelReader);
+            } else if (!isVerticalTraverse && scanner instanceof ByteRowScanner && (columnWidths != null || colDelimiter.isLiteral())) {
+                readFields((ByteRowScanner) scanner);
+            } else {
+                readDataLines(mFile);
+            }
 
+            stageStart = System.nanoTime();
             mFile.close();
+            recorder.since(ParserStats.Stage.CLOSE, stageStart);
+            parsed = true;
 
         } catch (final Exception e) {
             e.printStackTrace();
@@ -491,6 +840,13 @@ public class ASCIIParser extends DefaultHandler implements Parser {
             }
 
         } finally {
+            // deletes the spill files also when the file failed
+            releaseWriteForEach();
+
+            stageStart = System.nanoTime();
+            sendDataToFls(parsed);
+            recorder.since(ParserStats.Stage.FLS, stageStart);
+
             if (br != null) {
                 try {
                     br.close();
@@ -499,6 +855,14 @@ public class ASCIIParser extends DefaultHandler implements Parser {
                 }
             }
 
+            if (scanner != null) {
+                try {
+                    scanner.close();
+                } catch (final Exception e) {
+                    log.log(Level.WARNING, "Error closing RowScanner", e);
+                }
+            }
+
             if (mFile != null) {
                 try {
                     mFile.close();
@@ -506,50 +870,55 @@ public class ASCIIParser extends DefaultHandler implements Parser {
                     log.log(Level.WARNING, "Error closing MeasurementFile", e);
                 }
             }
+
+            if (dictionary != null) {
+                recorder.dictionaryLookups(dictionary.getHits(), dictionary.getMisses());
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Value dictionary of " + sf.getName() + ": " + dictionary.getHits() + " hits, " + dictionary.getMisses()
+                            + " misses, " + dictionary.getEvictions() + " values replaced");
+                }
+                dictionary.resetCounters();
+            }
+            recorder.fileFinished(sf.fileSize());
+            diagnostics.fileFinished(sf.getName());
         }
 
     }
 
     /**
-     * 
-     * 
-     * @param mFile
+     * Creates the measurement file the rows of the sourcefile are written to.
      */
+    protected MeasurementFile createMeasurementFile(final SourceFile sf, final String tagID) throws Exception {
+        return Main.createMeasurementFile(sf, tagID, techPack, setType, setName, this.workerName, log);
+    }
 
-    private List readHeader(final String headerLine, final String delim) throws Exception {
+    /**
+     * Splits the header row of the sourcefile into the names of the columns.
+     */
+    private List<String> readHeader(final String headerLine, final Delimiter delim) {
 
-        final List list = new ArrayList();
-        log.log(Level.FINEST, " header: " + headerLine);
+        final List<String> list = new ArrayList<String>();
+        final boolean tracing = log.isLoggable(Level.FINEST);
+        if (tracing) {
+            log.log(Level.FINEST, " header: " + headerLine);
+        }
 
-        final String[] result = headerLine.split(delim);
-        for (final String value : result) {
+        final String[] result = columnWidths != null ? columnWidths.split(headerLine) : delim.split(headerLine);
+        for (String value : result) {
+            if (columnWidths != null) {
+                // padding of a fixed width header is not part of the column name
+                value = value.trim();
+            }
             list.add(value);
-            log.log(Level.FINEST, " Value: " + value);
-
+            if (tracing) {
+                log.log(Level.FINEST, " Value: " + value);
+            }
         }
 
         return list;
 
     }
 
-    private void writeData(final String data, final int index, final MeasurementFile mFile) throws Exception {
-        try {
-            String key = "";
-            if (counterList == null) {
-                key = Integer.toString(index).trim();
-            } else {
-                key = ((String) counterList.get(index)).trim();
-            }
-            prepareFlsData(key, data);
-            mFile.addData(key, data);
-            log.log(Level.FINEST, " data element: " + key + " = " + data + " addded to measurement file");
-
-        } catch (final Exception e) {
-            log.log(Level.WARNING, " Error while inserting data pair key:" + Integer.toString(index).trim() + " value:" + data, e);
-            throw new Exception(" Error while inserting data pair key:" + Integer.toString(index).trim() + " value:" + data, e);
-        }
-    }
-    
     private void prepareFlsData(String key, String data) {
        	if(key.equals("srcNodeFDN") || key.equals("nodeFDN")) {
         	nodefdn=data;
@@ -559,10 +928,10 @@ public class ASCIIParser extends DefaultHandler implements Parser {
         }
     }
     
-    private void handleVerticalTraverse(String[] result) {
+    private void handleVerticalTraverse(String[] result) throws IOException {
     	String key = null;
     	String value = null;
-        List<String> valueList = null;
+        SpillList valueList = null;
         if (isVerticalTraverse) {
         	key = result[0];
         	if (result.length > 1) {
@@ -570,22 +939,26 @@ public class ASCIIParser extends DefaultHandler implements Parser {
         	} else {
         		return;
         	}
-        	log.log(Level.FINEST, "handleVerticalTraverse: key :"+key+" and value :"+value);
+        	if (diagnostics.isTracing()) {
+        		log.log(Level.FINEST, "handleVerticalTraverse: key :"+key+" and value :"+value);
+        	}
            	if (writeForEachColumns != null && writeForEachColumns.contains(key)) {
         		if (value != null && value.contains(eNodeBName)) {
         			key = "enodeBFDN";
         			verticalTraverseData.put(key, value);
-        			log.log(Level.FINEST, "handleVerticalTraverse:Adding enodeBFDN :"+key+" and value :"+value);
+        			if (diagnostics.isTracing()) {
+        				log.log(Level.FINEST, "handleVerticalTraverse:Adding enodeBFDN :"+key+" and value :"+value);
+        			}
         		} else {
         			valueList = writeForEachMap.get(key);
-        			if (valueList != null){
-        				valueList.add(value);
-        			} else {
-        				valueList = new ArrayList<>();
-        				valueList.add(value);
+        			if (valueList == null) {
+        				valueList = new SpillList(verticalSpillThreshold);
+        				writeForEachMap.put(key, valueList);
+        			}
+        			valueList.add(value);
+        			if (diagnostics.isTracing()) {
+        				log.log(Level.FINEST, "handleVerticalTraverse: writeForEachMap: Adding key :"+key+" value number "+valueList.size());
         			}
-        			log.log(Level.FINEST, "handleVerticalTraverse: writeForEachMap: Adding key :"+key+" and valueList :"+valueList);
-        			writeForEachMap.put(key, valueList);
         		}
         	} else {
         		prepareFlsData(key, value);
@@ -594,41 +967,112 @@ public class ASCIIParser extends DefaultHandler implements Parser {
         }
     }
     
-    private void sendDataToFls() {
+    private void resetFlsData() {
+    	nodefdn = null;
+    	ne_type = "";
+    	isFlsChecked = false;
+    	isFlsEnabled = false;
+    	enmHostName = null;
+    	lastFlsNodeFdn = null;
+    	lastFlsNeType = null;
+    	flsNotifications.clear();
+    }
+
+    /**
+     * Resolves once per file whether FLS is enabled for the ENM the file is coming from.
+     */
+    private void checkFls() {
+    	isFlsChecked = true;
     	try {
-			String dir = sf.getProperty("inDir");
-			log.log(Level.FINE, "THE INDIR IS >>>>>>>>>>>>>"+dir);
-//			String pattern = ".+/(.+)/.+/.+/.+";
-//			String enmDir = transformFileVariables(dir, pattern);
-			String enmDir=getOSSIdFromInDir(dir);
-			log.log(Level.FINE, "THE ENMDIR IS >>>>>>>>>>>>>>>>>>>"+enmDir);
-			String enmAlias = Main.resolveDirVariable(enmDir);
-			isFlsEnabled = FlsUtils.isFlsEnabled(enmAlias);
-			if (isFlsEnabled) {
-				multiEs = (IEnmInterworkingRMI) Naming
-						.lookup(RmiUrlFactory.getInstance().getMultiESRmiUrl(EnmInterCommonUtils.getEngineIP()));
-				String enmHostName = FlsUtils.getEnmShortHostName(enmAlias);
-				try {
-					if ( ( nodefdn != null && !nodefdn.equals("") ) && ( ne_type != null && !ne_type.equals("") ) && enmHostName != null){
-						log.info("In FLS mode. Adding FDN to the Automatic Node Assignment Blocking Queue "
-								+ ne_type + " " + nodefdn + " " + enmHostName);
-						multiEs.addingToBlockingQueue(ne_type, nodefdn, enmHostName);
-					}
-				} catch (Exception abqE) {
-					log.log(Level.WARNING, "Exception occured while adding FDN to Blocking Queue!", abqE);
-				}
-			}
+			enmHostName = getFlsHostName(sf);
+			isFlsEnabled = enmHostName != null;
 		} catch (Exception e) {
 			log.log(Level.WARNING, "Exception occured while checking for FLS", e);
 		}
     }
+
+    /**
+     * Returns the short host name of the ENM the sourcefile is coming from, or null if FLS is not enabled for that ENM.
+     */
+    String getFlsHostName(final SourceFile sf) throws Exception {
+		String dir = sf.getProperty("inDir");
+		log.log(Level.FINE, "THE INDIR IS >>>>>>>>>>>>>"+dir);
+		String enmDir=getOSSIdFromInDir(dir);
+		log.log(Level.FINE, "THE ENMDIR IS >>>>>>>>>>>>>>>>>>>"+enmDir);
+		String enmAlias = Main.resolveDirVariable(enmDir);
+		if (FlsUtils.isFlsEnabled(enmAlias)) {
+			return FlsUtils.getEnmShortHostName(enmAlias);
+		}
+		return null;
+    }
+
+    /**
+     * Collects the node of the current row to be sent to FLS at the end of the file. Each node is sent only once per file.
+     */
+    private void collectFlsData() {
+    	if (nodefdn == null || nodefdn.equals("") || ne_type == null || ne_type.equals("")) {
+    		return;
+    	}
+    	if (nodefdn.equals(lastFlsNodeFdn) && ne_type.equals(lastFlsNeType)) {
+    		return;
+    	}
+    	lastFlsNodeFdn = nodefdn;
+    	lastFlsNeType = ne_type;
+    	if (!isFlsChecked) {
+    		checkFls();
+    	}
+    	if (isFlsEnabled && enmHostName != null) {
+    		flsNotifications.add(new FlsNotification(ne_type, nodefdn, enmHostName));
+    	}
+    }
+
+    /**
+     * Hands the nodes collected from the file over to the FLS dispatcher at once, which sends them to the Automatic Node Assignment
+     * Blocking Queue in the background. Nothing is sent for a file whose parsing failed, as its rows may not have been loaded.
+     *
+     * @param parsed
+     *            true if the file was parsed to its end
+     */
+    private void sendDataToFls(final boolean parsed) {
+    	if (flsNotifications.isEmpty()) {
+    		return;
+    	}
+    	try {
+    		if (!parsed) {
+    			log.log(Level.FINE, "Parsing of " + filename + " failed, " + flsNotifications.size() + " nodes not sent to FLS");
+    			return;
+    		}
+    		final int dropped = submitToFls(flsNotifications);
+    		if (dropped > 0) {
+    			log.log(Level.FINE, "FLS queue full, dropped " + dropped + " of " + flsNotifications.size() + " nodes of " + filename);
+    		}
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Exception occured while sending FDNs to FLS", e);
+		} finally {
+			flsNotifications.clear();
+		}
+    }
     
-    private void addDefaultData(MeasurementFile mFile) {
-    	// if datetime is parsed from filename...
-		mFile.addData("filename", sf.getName());
-		mFile.addData("DC_SUSPECTFLAG", "");
-		mFile.addData("DIRNAME", sf.getDir());
-		mFile.addData("JVM_TIMEZONE", JVM_TIMEZONE);
+    /**
+     * Queues the notifications of a file to the FLS dispatcher of the JVM.
+     *
+     * @return number of notifications dropped
+     */
+    int submitToFls(final Collection<FlsNotification> notifications) {
+    	return FlsDispatcher.getInstance().submitAll(notifications);
+    }
+
+    /**
+     * Creates the values that are the same on every row of the file. They are computed once per file and written with the values of each
+     * row, taking precedence over columns of the same name.
+     */
+    private Map<String, String> createRowTemplate() {
+    	final Map<String, String> template = new LinkedHashMap<String, String>();
+    	template.put("filename", sf.getName());
+    	template.put("DC_SUSPECTFLAG", "");
+    	template.put("DIRNAME", sf.getDir());
+    	template.put("JVM_TIMEZONE", JVM_TIMEZONE);
+    	return template;
     }
 
     /**
@@ -639,106 +1083,363 @@ public class ASCIIParser extends DefaultHandler implements Parser {
     private void readDataLines(final MeasurementFile mFile) throws Exception {
 
     	String line;
-    	String value;
     	long lineNum = 0;
+    	final ByteRowScanner byteScanner = scanner instanceof ByteRowScanner ? (ByteRowScanner) scanner : null;
+    	long offset = byteScanner != null ? byteScanner.position() : -1;
+    	final Matcher boundary = isVerticalTraverse && recordBoundary != null ? recordBoundary.matcher("") : null;
+    	long recordLines = 0;
+    	long records = 0;
 
     	// read line from file
-    	line = readLine(rowDelim);
-    	log.log(Level.INFO, "dataline: " + line);
+    	boolean timed = readSampler.timeRow();
+    	long start = timed ? System.nanoTime() : 0;
+    	line = readLine();
+    	start = recorder.sample(ParserStats.Stage.SCAN, start, timed);
+    	if (log.isLoggable(Level.FINE)) {
+    		log.log(Level.FINE, "dataline: " + line);
+    	}
 	
     	if (null != line) {
 
-    		do {
-    			final String[] result = line.split(colDelim);
-    			if (isVerticalTraverse) {
-    				handleVerticalTraverse(result);
-    			} else {
-    				try {
-
-    					//if empty row then don't write it out
-    					if (0 < line.trim().length()) {
-    						for (int i = 0; i < result.length; i++) {
-    							value = result[i];
-    							log.log(Level.FINEST, "Value: " + value);
-
-    							// if datetime is retrieved from column and column name is correct,
-    							// get DATETIME_ID
-
-    							if (datatimeMode == DATATIME_FROM_COLUMN && ((String) counterList.get(i)).equalsIgnoreCase(datatimeColumn)) {
-    								mFile.addData("DATETIME_ID", value.trim());
-    							}
-    							if (datatimeMode == DATATIME_FROM_FILENAME) {
-    								mFile.addData("DATETIME_ID", datatimeColumn);
-    							}
-
-    							if (mFile.isOpen()) {
-    								writeData(value.trim(), i, mFile);
-    							}
+    		try {
+    			do {
+    				if (boundary != null && boundary.reset(line).matches()) {
+    					// the rows of the previous record are written before the next one is read
+    					if (recordLines > 0) {
+    						writeForVTraverse(mFile);
+    						records++;
+    					}
+    					recordLines = 0;
+    					startRecord(boundary);
+    				} else {
+    					final String[] result = columnWidths != null ? columnWidths.split(line) : colDelimiter.split(line);
+    					recorder.sample(ParserStats.Stage.TOKENIZE, start, timed);
+    					if (isVerticalTraverse) {
+    						handleVerticalTraverse(result);
+    						recordLines++;
+    					} else if (0 < line.trim().length()) {
+    						//if empty row then don't write it out
+    						try {
+    							writeRow(result, line, lineNum, offset);
+    						} catch (final Exception e) {
+    							recorder.lineSkipped(RejectReason.INVALID_ROW);
+    							diagnostics.rowSkipped(RejectReason.INVALID_ROW, lineNum, offset, line, e);
     						}
-    						addDefaultData(mFile);
-    						sendDataToFls();
-    						mFile.saveData();
     					}
-    				} catch (final Exception e) {
+    				}
+    				if (byteScanner != null) {
+    					offset = byteScanner.position();
+    				}
+    				timed = readSampler.timeRow();
+    				start = timed ? System.nanoTime() : 0;
+    				line = readLine();
+    				start = recorder.sample(ParserStats.Stage.SCAN, start, timed);
+    				lineNum++;
+    			} while (null != line);
+    		} finally {
+    			if (rowWriter != null) {
+    				rowWriter.publish();
+    			}
+    		}
+    		if (isVerticalTraverse && (boundary == null || recordLines > 0)) {
+    			writeForVTraverse(mFile);
+    			records++;
+    		}
+    		if (boundary != null) {
+    			log.log(Level.FINE, records + " records parsed from " + sf.getName());
+    		}
+    	}
+    }
 
-    					log.log(Level.WARNING, "Error while parsing dataline, skipping(" + lineNum + "): " + line, e);
+    /**
+     * Starts a record of a vertical traverse file at a record boundary line. Node of the previous record is not carried over.
+     */
+    private void startRecord(final Matcher boundary) {
+    	nodefdn = null;
+    	ne_type = "";
+    	if (boundary.groupCount() > 0 && boundary.group(1) != null) {
+    		eNodeBName = boundary.group(1);
+    		if (diagnostics.isTracing()) {
+    			log.log(Level.FINEST, "eNodeBName of the record =" + eNodeBName);
+    		}
+    	}
+    }
+
+    /**
+     * Reads the data rows as field slices of the bytes of the file. Strings are created only for the values written to the measurement file,
+     * the row itself only if it is logged or skipped.
+     */
+    private void readFields(final ByteRowScanner byteScanner) throws Exception {
+
+    	final FieldSlices fields;
+    	if (columnWidths != null) {
+    		fields = new FieldSlices(columnWidths);
+    	} else {
+    		fields = new FieldSlices(colDelimiter);
+    		rowWriter.setSeparator(colDelimiter.getLiteral());
+    	}
+    	long lineNum = 0;
+    	long offset = byteScanner.position();
+
+    	try {
+    		boolean timed = readSampler.timeRow();
+    		long start = timed ? System.nanoTime() : 0;
+    		while (byteScanner.nextRow(fields)) {
+    			start = recorder.sample(ParserStats.Stage.SCAN, start, timed);
+    			if (lineNum == 0 && log.isLoggable(Level.FINE)) {
+    				log.log(Level.FINE, "dataline: " + fields);
+    			}
+    			fields.split();
+    			recorder.sample(ParserStats.Stage.TOKENIZE, start, timed);
+    			//if empty row then don't write it out
+    			if (!fields.isBlank()) {
+    				try {
+    					writeFields(fields, lineNum, offset);
+    				} catch (final Exception e) {
+    					recorder.lineSkipped(RejectReason.INVALID_ROW);
+    					diagnostics.rowSkipped(RejectReason.INVALID_ROW, lineNum, offset, fields.toString(), e);
     				}
     			}
-    			line = readLine(rowDelim);
+    			offset = byteScanner.position();
     			lineNum++;
-    		} while (null != line);
-    		if (isVerticalTraverse){
-    			writeForVTraverse(mFile);
+    			timed = readSampler.timeRow();
+    			start = timed ? System.nanoTime() : 0;
     		}
+    	} finally {
+    		rowWriter.publish();
     	}
     }
+
+    /**
+     * Creates reader for parsing the data rows in parallel if the file is large enough and its rows can be found from any position.
+     * 
+     * @return reader or null if the file is parsed sequentially
+     */
+    private ParallelRowReader createParallelReader() throws IOException {
+
+    	if (isVerticalTraverse || columnWidths != null || parallelThreshold <= 0 || !(scanner instanceof ByteRowScanner) || !(input instanceof FileInputStream)) {
+    		return null;
+    	}
+    	if (sf.fileSize() < parallelThreshold || !ParallelRowReader.canSplit(rowDelimiter, rowDelimLength, charset)) {
+    		return null;
+    	}
+
+    	final ParallelRowReader reader = new ParallelRowReader(((FileInputStream) input).getChannel(), ((ByteRowScanner) scanner).position(),
+    			rowDelimiter, colDelimiter, charset, parallelChunkSize, parallelMemory, bufferSize, parallelOrdered);
+    	log.log(Level.INFO, "Parsing " + sf.getName() + " in " + reader.getChunkCount() + " parallel chunks, at most " + reader.getMaxInFlight()
+    			+ " at a time");
+    	return reader;
+    }
+
+    /**
+     * Writes the rows of the chunks parsed in parallel. Row numbers are counted in the order the chunks are returned.
+     */
+    private void readChunks(final ParallelRowReader reader) throws Exception {
+
+    	long lineNum = 0;
+    	chunkReader = reader;
+    	if (colDelimiter.isLiteral()) {
+    		rowWriter.setSeparator(colDelimiter.getLiteral());
+    	}
+    	try {
+    		ParallelRowReader.Chunk chunk;
+    		while ((chunk = reader.next()) != null) {
+    			recorder.add(ParserStats.Stage.SCAN, chunk.size(), chunk.getScanNanos());
+    			recorder.add(ParserStats.Stage.TOKENIZE, chunk.size(), chunk.getSplitNanos());
+    			for (int i = 0; i < chunk.size(); i++, lineNum++) {
+    				final String[] row = chunk.getRow(i);
+    				//empty rows are not written
+    				if (row != null) {
+    					try {
+    						writeRow(row, null, lineNum, chunk.getOffset(i));
+    					} catch (final Exception e) {
+    						recorder.lineSkipped(RejectReason.INVALID_ROW);
+    						final long offset = chunk.getOffset(i);
+    						diagnostics.rowSkipped(RejectReason.INVALID_ROW, lineNum, offset, null, reader, e);
+    					}
+    				}
+    			}
+    		}
+    	} finally {
+    		chunkReader = null;
+    		reader.close();
+    		rowWriter.publish();
+    	}
+    }
+
+    /**
+     * Writes one data row using the column plan of the file. A row that does not fit the plan is rejected without an
+     * exception.
+     * 
+     * @param offset
+     *            position of the row in the sourcefile in bytes or -1 if not known
+     */
+    private void writeRow(final String[] row, final String line, final long lineNum, final long offset) {
+
+    	final int columns = columnPlan.columnsToWrite(row.length);
+    	if (columns < 0) {
+    		rowRejected(row.length, line, lineNum, offset);
+    		return;
+    	}
+
+    	for (int i = 0; i < columns; i++) {
+    		row[i] = dictionary == null ? row[i].trim() : dictionary.get(row[i].trim());
+    	}
+    	addRow(row, columns, line, lineNum, offset);
+    }
+
+    /**
+     * Writes one data row of field slices. Only the fields that are written are converted to Strings.
+     */
+    private void writeFields(final FieldSlices fields, final long lineNum, final long offset) {
+
+    	final int columns = columnPlan.columnsToWrite(fields.size());
+    	if (columns < 0) {
+    		rowRejected(fields.size(), fields.toString(), lineNum, offset);
+    		return;
+    	}
+
+    	// the row writer does not keep the values, so the array is reused
+    	if (fieldValues.length < columns) {
+    		fieldValues = new String[Math.max(columns, fieldValues.length * 2)];
+    	}
+    	final String[] row = fieldValues;
+    	for (int i = 0; i < columns; i++) {
+    		row[i] = fields.get(i, dictionary);
+    	}
+    	addRow(row, columns, null, lineNum, offset);
+    }
+
+    private void rowRejected(final int width, final String line, final long lineNum, final long offset) {
+    	final RejectReason reason = width > columnPlan.getWidth() ? RejectReason.WIDER_THAN_HEADER : RejectReason.NARROWER_THAN_HEADER;
+    	recorder.lineSkipped(reason);
+    	// a row parsed in parallel has no line, it is read again from the file only if it is needed
+    	diagnostics.rowSkipped(reason, lineNum, offset, line, chunkReader, null);
+    }
+
+    /**
+     * Writes trimmed values of a row and collects its FLS data.
+     * 
+     * @param line
+     *            the original row or null if the row writer rebuilds it from the values for error messages
+     */
+    private void addRow(final String[] row, final int columns, final String line, final long lineNum, final long offset) {
+
+    	// if datetime is retrieved from column get DATETIME_ID, DATETIME_ID parsed from filename is a constant of the row writer
+    	String datetime = null;
+    	final int datetimeIndex = columnPlan.getDatetimeIndex();
+    	if (datetimeIndex >= 0 && datetimeIndex < columns) {
+    		datetime = row[datetimeIndex];
+    	}
+
+    	nodefdn = columnPlan.getNodeFdn(row, columns, nodefdn);
+    	ne_type = columnPlan.getNodeType(row, columns, ne_type);
+    	collectFlsData();
+
+    	rowWriter.write(row, columns, datetime, line, lineNum, offset);
+    }
     
     private void writeForVTraverse(MeasurementFile mFile) {
     	try {
     		 if(writeForEachMap.get("FDN")== null) {
-    			 List<String> arr= new ArrayList<String>();
+    			 SpillList arr= new SpillList(0);
     			 String val=verticalTraverseData.get("enodeBFDN");
     			 arr.add(val);
     			 writeForEachMap.put("FDN", arr);
     		 }
-	      	for (Map.Entry<String, List<String>> entry : writeForEachMap.entrySet()) {
+    		// the rows differ only by the write for each value
+    		final Map<String, String> rowData = new HashMap<String, String>(verticalTraverseData);
+    		rowData.putAll(createRowTemplate());
+	      	for (Map.Entry<String, SpillList> entry : writeForEachMap.entrySet()) {
+	      		final boolean fixed = rowData.containsKey(entry.getKey());
+	      		if (entry.getValue().getSpilled() > 0) {
+	      			log.log(Level.FINE, entry.getValue().getSpilled() + " values of " + entry.getKey() + " were kept in a temporary file");
+	      		}
 	    		for(String value: entry.getValue()) {
-	    			mFile.addData(entry.getKey(), value);
-	    			mFile.addData(verticalTraverseData);
-	    			addDefaultData(mFile);
+	    			final boolean timed = writeSampler.timeRow();
+	    			long start = timed ? System.nanoTime() : 0;
+	    			if (!fixed) {
+	    				rowData.put(entry.getKey(), value);
+	    			}
+	    			mFile.addData(rowData);
+	    			start = recorder.sample(ParserStats.Stage.BIND, start, timed);
 	    			mFile.saveData();
-	    			log.log(Level.FINEST, "writeForVTraverse:Adding key :"+entry.getKey()+" and value :"+value);
+	    			recorder.sample(ParserStats.Stage.SAVE, start, timed);
+	    			recorder.rowWritten();
+	    			if (diagnostics.isTracing()) {
+	    				log.log(Level.FINEST, "writeForVTraverse:Adding key :"+entry.getKey()+" and value :"+value);
+	    			}
+	    		}
+	    		if (!fixed) {
+	    			rowData.remove(entry.getKey());
 	    		}
 	    	}
-	    	sendDataToFls();
+	    	collectFlsData();
 		} catch (Exception e) {
 			log.log(Level.WARNING, "Error while saving data got by vertical traversing",e);
 		} finally {
 			verticalTraverseData.clear();
+			releaseWriteForEach();
 		}
     }
 
     /**
-     * Creates new Bufferreader from a file.
+     * Removes the writeForEach values of the file and deletes their temporary files.
+     */
+    private void releaseWriteForEach() {
+    	if (writeForEachMap != null) {
+    		for (final SpillList values : writeForEachMap.values()) {
+    			values.close();
+    		}
+    		writeForEachMap.clear();
+    	}
+    }
+
+    /**
+     * Creates a row scanner reading the bytes of a file. If the row delimiter or the charset do not allow scanning of bytes, creates new
+     * Bufferreader from the file instead. A gzip compressed file is decompressed while it is read.
      * 
      * @param Filename
      * 
      */
     protected void setData(final SourceFile sf) throws Exception {
 
-        final String charsetName = StaticProperties.getProperty("charsetName", null);
-        InputStreamReader isr = null;
+        String charsetName = StaticProperties.getProperty("charsetName", null);
         if (charsetName == null) {
+            charsetName = "UTF-8";
+        } else {
+            log.log(Level.FINEST, "InputStreamReader charsetName: " + charsetName);
+        }
 
-            isr = new InputStreamReader(sf.getFileInputStream(), "UTF-8");
-            
-
+        final InputStream raw;
+        if (prefetched != null && prefetched.getSourceFile() == sf && prefetched.hasData()) {
+            log.log(Level.FINEST, "Reading prefetched content of " + sf.getName());
+            raw = prefetched.openStream();
         } else {
+            raw = sf.getFileInputStream();
+        }
 
-            log.log(Level.FINEST, "InputStreamReader charsetName: " + charsetName);
-            isr = new InputStreamReader(sf.getFileInputStream(), charsetName);
+        final InputStream in;
+        try {
+            in = GzipInputStream.open(raw, gzipBackground);
+        } catch (final IOException e) {
+            raw.close();
+            throw e;
+        }
+        if (in instanceof GzipInputStream || in instanceof BackgroundInputStream) {
+            log.log(Level.FINEST, "Decompressing gzip compressed " + sf.getName() + (gzipBackground ? " in background" : ""));
+        }
+        input = in;
+        charset = Charset.forName(charsetName);
 
+        scanner = ByteRowScanner.create(in, rowDelimiter, rowDelimLength, charset, inputMode, bufferSize);
+        if (scanner != null) {
+            log.log(Level.FINEST, "Reading file as bytes, input_mode: " + inputMode);
+            return;
         }
+        log.log(Level.FINEST, "Row delimiter or charset does not allow reading file as bytes, reading file as character stream");
+
+        final InputStreamReader isr = new InputStreamReader(in, charsetName);
 
         log.log(Level.FINEST, "InputStreamReader Encoding: " + isr.getEncoding());
         br = new BufferedReader(isr);
@@ -746,59 +1447,18 @@ public class ASCIIParser extends DefaultHandler implements Parser {
     }
 
     /**
-     * read characters from reader until eof or delimiter is encountered.
-     * 
-     * @param Filename
+     * read next row from the row scanner.
      * 
+     * @return next row or null if end of file is reached
      */
-    private String readLine(final String delimiter) throws Exception {
+    private String readLine() throws Exception {
 
-        //if end of line return with null
-        if (null == this.block) {
+        //if no data is set return with null
+        if (null == this.scanner) {
             return null;
         }
 
-        final char[] tmp = new char[bufferSize];
-
-        while (true) {
-
-            // log.log(Level.FINEST, "buffer: " + block);
-
-            // delimiter found
-            final String[] result = this.block.split(delimiter);
-            
-            if (result.length > 1) {
-            	
-            	if(result[0].startsWith(UTF8_BOM))
-                {
-            		log.info("The file starts with BOM Character");
-                    result[0]= result[0].substring(1);
-                    log.info("The result[0] is" + result[0]);
-                	
-                }
-                // remove discovered token + deliminator from block
-                block = block.substring(result[0].length() + rowDelimLength);
-
-                log.log(Level.FINEST, "result: " + result[0]);
-
-                // return found block
-                return result[0];
-
-            } else {
-
-                // delimiter not found, read next block
-                final int count = br.read(tmp, 0, bufferSize);
-
-                // if end of file return whole block and set block to null value
-                if (count == -1) {
-                    final String finalBlock = this.block;
-                    this.block = null;
-                    return finalBlock;
-                }
-
-                this.block += new String(tmp);
-            }
-        }
+        return scanner.nextRow();
 
     }
     
@@ -808,19 +1468,16 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 	 * @param name
 	 *            of the input file
 	 * @param pattern
-	 *            the pattern to lookup from the filename
+	 *            the compiled pattern to lookup from the filename, or null if the pattern is invalid
 	 * @return result returns the group(1) of result, or null
 	 */
-	private String transformFileVariables(String filename, String pattern) {
+	private String transformFileVariables(String filename, Pattern pattern) {
 		String result = null;
-		try {
-			Pattern p = Pattern.compile(pattern);
-			Matcher m = p.matcher(filename);
+		if (pattern != null) {
+			Matcher m = pattern.matcher(filename);
 			if (m.matches()) {
 				result = m.group(1);
 			}
-		} catch (PatternSyntaxException e) {
-			log.log(Level.SEVERE, "Error performing transformFileVariables for ASCIIParser.", e);
 		}
 		return result;
 	}
@@ -850,10 +1507,10 @@ public class ASCIIParser extends DefaultHandler implements Parser {
 	}
 	
     /**
-     * Main - testing only
+     * Main - testing only. Writes synthetic sourcefiles, see {@link WorkloadGenerator}.
      */
-    public static void main(final String args[]) {
-
+    public static void main(final String args[]) throws Exception {
+        WorkloadGenerator.main(args);
     }
 
 }
@@ -0,0 +1,125 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Handler that passes log records to the parent of their logger in a background thread. <br>
+ * <br>
+ * A logger using this handler instead of its parent handlers returns as soon as the record is in a bounded queue, so slow log I/O does not
+ * slow down the logging thread. When the queue is full the record is dropped and counted, and the number of dropped records is logged
+ * when the queue has been emptied. One handler and thread is shared by all loggers of the JVM it is installed to.
+ *
+ */
+final class AsyncLogHandler extends Handler {
+
+    private static final Logger LOG = Logger.getLogger("etl.parser.ASCII.AsyncLogHandler");
+
+    private static AsyncLogHandler instance;
+
+    private final BlockingQueue<LogRecord> queue;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final Thread thread;
+
+    AsyncLogHandler(final int capacity) {
+        this.queue = new ArrayBlockingQueue<LogRecord>(Math.max(capacity, 1));
+        this.thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "ASCIIParser-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Makes the logger pass its records to its parent through the shared handler.
+     */
+    static synchronized void install(final Logger logger, final int capacity) {
+        if (instance == null) {
+            instance = new AsyncLogHandler(capacity);
+        }
+        for (Handler handler : logger.getHandlers()) {
+            if (handler == instance) {
+                return;
+            }
+        }
+        logger.addHandler(instance);
+        logger.setUseParentHandlers(false);
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        // caller is found from the stack, which must be done in the logging thread
+        record.getSourceClassName();
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final LogRecord record = queue.take();
+                final Logger target = record.getLoggerName() == null ? null : Logger.getLogger(record.getLoggerName()).getParent();
+                if (target != null) {
+                    target.log(record);
+                }
+                published.incrementAndGet();
+
+                if (queue.isEmpty()) {
+                    final long lost = dropped.getAndSet(0);
+                    if (lost > 0) {
+                        LOG.warning(lost + " log records were dropped because logging could not keep up");
+                    }
+                }
+            } catch (final InterruptedException e) {
+                return;
+            } catch (final RuntimeException e) {
+                reportError("Publishing log record failed", e, 0);
+            }
+        }
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Waits until the queued records are published.
+     */
+    @Override
+    public void flush() {
+        try {
+            while (!queue.isEmpty()) {
+                Thread.sleep(1);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+}
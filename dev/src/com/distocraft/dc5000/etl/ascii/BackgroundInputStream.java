@@ -0,0 +1,208 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stream that reads another stream ahead in a background thread. <br>
+ * <br>
+ * Used to decompress a sourcefile while the parser scans the rows already decompressed. The background thread reads blocks of the source
+ * into a queue of DEPTH blocks and the blocks are reused once the parser has read them. An exception of the source is thrown to the
+ * parser when it reaches the failed block. Closing the stream stops the background thread and closes the source.
+ *
+ */
+final class BackgroundInputStream extends InputStream {
+
+    static final int DEPTH = 4;
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "ASCIIParser-inflate-" + THREADS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final InputStream source;
+
+    private final int blockSize;
+
+    private final BlockingQueue<Block> blocks = new ArrayBlockingQueue<Block>(DEPTH);
+
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<byte[]>(DEPTH + 2);
+
+    private final Future<?> reader;
+
+    private final byte[] single = new byte[1];
+
+    private volatile boolean closed;
+
+    private Block current;
+
+    private int position;
+
+    /**
+     * @param source
+     *            stream read in the background, closed when this stream is closed
+     * @param blockSize
+     *            size of the blocks read from the source in bytes
+     */
+    BackgroundInputStream(final InputStream source, final int blockSize) {
+        this.source = source;
+        this.blockSize = blockSize;
+        this.reader = EXECUTOR.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                readAhead();
+            }
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (current == null || position == current.length && current.length > 0) {
+            if (current != null) {
+                free.offer(current.data);
+            }
+            try {
+                current = blocks.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+            position = 0;
+        }
+        if (current.error != null) {
+            // thrown again on the next reads
+            throw new IOException("Reading in background failed", current.error);
+        }
+        if (current.length < 0) {
+            return -1;
+        }
+        final int count = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current.length < 0 ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        blocks.clear();
+        try {
+            reader.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            // the source is closed by the reader in any case
+        }
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                byte[] data = free.poll();
+                if (data == null) {
+                    data = new byte[blockSize];
+                }
+                int length = 0;
+                int count = 0;
+                Exception error = null;
+                try {
+                    while (length < data.length && (count = source.read(data, length, data.length - length)) != -1) {
+                        length += count;
+                    }
+                } catch (final IOException e) {
+                    error = e;
+                } catch (final RuntimeException e) {
+                    error = e;
+                }
+                // bytes read before an error are still returned
+                if (length > 0 && !put(new Block(data, length, null))) {
+                    return;
+                }
+                if (error != null || count == -1) {
+                    put(new Block(null, -1, error));
+                    return;
+                }
+            }
+        } finally {
+            try {
+                source.close();
+            } catch (final IOException e) {
+                // nothing to report to, the parser has already finished with the stream
+            }
+        }
+    }
+
+    /**
+     * Waits until the block fits in the queue or the stream is closed.
+     *
+     * @return false if the stream was closed
+     */
+    private boolean put(final Block block) {
+        try {
+            while (!closed) {
+                if (blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Bytes read from the source. The end of the source has length -1, a failed read has an error.
+     */
+    private static final class Block {
+
+        private final byte[] data;
+
+        private final int length;
+
+        private final Exception error;
+
+        Block(final byte[] data, final int length, final Exception error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+}
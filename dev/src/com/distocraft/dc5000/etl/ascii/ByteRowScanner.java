@@ -0,0 +1,531 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Row scanner that reads bytes of a sourcefile. <br>
+ * <br>
+ * Row delimiters are searched directly from the bytes and only the bytes of a found row are converted to characters. A row that contains
+ * only 7-bit ASCII bytes is converted without the charset decoder because all supported charsets encode ASCII characters as themselves.
+ * Other rows are decoded with the charset. <br>
+ * <br>
+ * The file is read from an InputStream into a heap buffer, from the FileChannel into pooled direct buffers or it is mapped into memory in
+ * windows. Only direct buffers of the read size are pooled, a buffer grown for a long row is released to the garbage collector with the
+ * scanner. Scanning bytes is possible only when the row delimiter is a literal and the charset encodes it with single bytes that can not be
+ * a part of any other character. A leading UTF-8 byte order mark is removed from the first row.
+ *
+ */
+class ByteRowScanner implements RowScanner {
+
+    /**
+     * Minimum size of the read buffers in bytes.
+     */
+    static final int MIN_READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the mapped window in bytes.
+     */
+    static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int POOL_SIZE = 16;
+
+    private static final BlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<ByteBuffer>(POOL_SIZE);
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final InputStream stream;
+
+    private final FileChannel channel;
+
+    private final byte[] delimiter;
+
+    private final int delimiterSize;
+
+    private final boolean mapped;
+
+    private final boolean utf8;
+
+    private final CharsetDecoder decoder;
+
+    private CharBuffer chars;
+
+    private byte[] rowBytes;
+
+    private ByteBuffer buffer;
+
+    private ByteBuffer view;
+
+    /**
+     * True if the buffer was taken from the pool and is returned to it when the scanner is closed. A buffer grown for a long row is not.
+     */
+    private boolean pooled;
+
+    private int windowSize;
+
+    private long fileSize;
+
+    /**
+     * Position of the first byte of the buffer in the file.
+     */
+    private long bufferOffset = 0;
+
+    /**
+     * Position of the next read in the file if the channel is read from a given position, otherwise negative.
+     */
+    private long readPosition = -1;
+
+    private boolean ownsInput = true;
+
+    private int start = 0;
+
+    private int end = 0;
+
+    private boolean eof = false;
+
+    private boolean finished = false;
+
+    private boolean delimiterSeen = false;
+
+    private boolean bomChecked = false;
+
+    /**
+     * Position of the row found by {@link #findRow()} in the buffer.
+     */
+    private int rowStart;
+
+    private int rowEnd;
+
+    /**
+     * Creates scanner reading the FileChannel of the sourcefile.
+     *
+     * @param channel
+     *            channel of the sourcefile
+     * @param delimiter
+     *            literal row delimiter
+     * @param delimiterSize
+     *            number of bytes removed with every delimiter or negative to remove the delimiter
+     * @param charset
+     *            charset of the sourcefile
+     * @param mapped
+     *            true if the file is mapped into memory, false if it is read into direct buffers
+     * @param windowSize
+     *            size of the read buffer or the mapped window in bytes
+     */
+    ByteRowScanner(final FileChannel channel, final Delimiter delimiter, final int delimiterSize, final Charset charset, final boolean mapped,
+            final int windowSize) throws IOException {
+        this(null, channel, delimiter, delimiterSize, charset, mapped, windowSize);
+    }
+
+    /**
+     * Creates scanner reading an InputStream of the sourcefile.
+     *
+     * @param stream
+     *            stream of the sourcefile
+     * @param delimiter
+     *            literal row delimiter
+     * @param delimiterSize
+     *            number of bytes removed with every delimiter or negative to remove the delimiter
+     * @param charset
+     *            charset of the sourcefile
+     * @param windowSize
+     *            size of the read buffer in bytes
+     */
+    ByteRowScanner(final InputStream stream, final Delimiter delimiter, final int delimiterSize, final Charset charset, final int windowSize)
+            throws IOException {
+        this(stream, null, delimiter, delimiterSize, charset, false, windowSize);
+    }
+
+    /**
+     * Creates scanner reading the channel of a sourcefile from the given position. The channel is shared, it is read with positional reads
+     * and it is not closed with the scanner. The rows are returned starting from the position, byte order mark is not removed.
+     *
+     * @param channel
+     *            channel of the sourcefile
+     * @param position
+     *            position of the first byte read
+     * @param delimiter
+     *            literal row delimiter
+     * @param charset
+     *            charset of the sourcefile
+     * @param windowSize
+     *            size of the read buffer in bytes
+     */
+    ByteRowScanner(final FileChannel channel, final long position, final Delimiter delimiter, final Charset charset, final int windowSize)
+            throws IOException {
+        this(null, channel, delimiter, -1, charset, false, windowSize);
+        this.bufferOffset = position;
+        this.readPosition = position;
+        this.ownsInput = false;
+        this.bomChecked = true;
+    }
+
+    private ByteRowScanner(final InputStream stream, final FileChannel channel, final Delimiter delimiter, final int delimiterSize,
+            final Charset charset, final boolean mapped, final int windowSize) throws IOException {
+        this.stream = stream;
+        this.channel = channel;
+        this.delimiter = delimiter.getLiteral().getBytes(charset);
+        this.delimiterSize = delimiterSize;
+        this.mapped = mapped;
+        this.windowSize = windowSize;
+        this.utf8 = "UTF-8".equals(charset.name());
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(1024);
+        this.rowBytes = new byte[1024];
+        if (mapped) {
+            this.fileSize = channel.size();
+        } else if (channel != null) {
+            setBuffer(acquire(windowSize));
+            pooled = true;
+        } else {
+            setBuffer(ByteBuffer.allocate(windowSize));
+        }
+    }
+
+    /**
+     * Creates scanner for the stream of a sourcefile if the row delimiter and the charset allow scanning of bytes.
+     *
+     * @param in
+     *            opened stream of the sourcefile
+     * @param rowDelim
+     *            configured row delimiter
+     * @param rowDelimLength
+     *            configured row delimiter size or negative
+     * @param charset
+     *            charset of the sourcefile
+     * @param inputMode
+     *            one of the ASCIIParser input modes. FileChannel is used only if the stream is a FileInputStream.
+     * @param bufferSize
+     *            configured buffer size
+     * @return scanner or null if the file can not be scanned as bytes
+     */
+    static ByteRowScanner create(final InputStream in, final Delimiter rowDelim, final int rowDelimLength, final Charset charset,
+            final int inputMode, final int bufferSize) throws IOException {
+
+        if (rowDelim == null || !rowDelim.isLiteral() || !isAsciiCompatible(charset)) {
+            return null;
+        }
+
+        if (in instanceof FileInputStream && inputMode == ASCIIParser.INPUT_FROM_MAPPED) {
+            return new ByteRowScanner(((FileInputStream) in).getChannel(), rowDelim, rowDelimLength, charset, true, MAP_WINDOW_SIZE);
+        }
+
+        final int readSize = Math.max(bufferSize, MIN_READ_BUFFER_SIZE);
+        if (in instanceof FileInputStream && inputMode == ASCIIParser.INPUT_FROM_CHANNEL) {
+            return new ByteRowScanner(((FileInputStream) in).getChannel(), rowDelim, rowDelimLength, charset, false, readSize);
+        }
+
+        return new ByteRowScanner(in, rowDelim, rowDelimLength, charset, readSize);
+    }
+
+    /**
+     * Returns true if all ASCII characters of the charset are encoded as single bytes that are never used within multibyte characters.
+     */
+    static boolean isAsciiCompatible(final Charset charset) {
+        final String name = charset.name();
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) || name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+
+    /**
+     * @see com.distocraft.dc5000.etl.ascii.RowScanner#nextRow()
+     */
+    @Override
+    public String nextRow() throws IOException {
+        return findRow() ? toString(rowStart, rowEnd) : null;
+    }
+
+    /**
+     * Reads the next row into the given field slices without creating a String. The fields are not split.
+     *
+     * @return false if there are no more rows
+     */
+    boolean nextRow(final FieldSlices row) throws IOException {
+        if (!findRow()) {
+            return false;
+        }
+        decode(rowStart, rowEnd, row);
+        return true;
+    }
+
+    /**
+     * Finds the next row from the buffer and sets rowStart and rowEnd to its bytes. The bytes are valid until the next row is searched.
+     *
+     * @return false if there are no more rows
+     */
+    private boolean findRow() throws IOException {
+
+        if (finished) {
+            return false;
+        }
+
+        int searchFrom = start;
+
+        while (true) {
+
+            if (!bomChecked && (end - start >= 3 || eof)) {
+                bomChecked = true;
+                if (utf8 && end - start >= 3 && buffer.get(start) == (byte) 0xEF && buffer.get(start + 1) == (byte) 0xBB
+                        && buffer.get(start + 2) == (byte) 0xBF) {
+                    start += 3;
+                }
+                searchFrom = start;
+            }
+
+            if (bomChecked) {
+                final int found = indexOfDelimiter(searchFrom);
+                if (found >= 0) {
+                    final int skip = delimiterSize < 0 ? delimiter.length : delimiterSize;
+                    if (found + skip <= end || eof) {
+                        rowStart = start;
+                        rowEnd = found;
+                        start = Math.min(found + skip, end);
+                        delimiterSeen = true;
+                        return true;
+                    }
+                    // the bytes removed with the delimiter are not read yet, the delimiter is found again after the next read
+                    searchFrom = found;
+                } else {
+                    // delimiter can not start before the last bytes already searched
+                    searchFrom = Math.max(start, end - delimiter.length + 1);
+                }
+            }
+
+            if (eof) {
+                finished = true;
+                if (start < end || !delimiterSeen) {
+                    rowStart = start;
+                    rowEnd = end;
+                    start = end;
+                    return true;
+                }
+                return false;
+            }
+
+            final int shift = start;
+            if (mapped) {
+                map();
+            } else {
+                read();
+            }
+            searchFrom -= shift - start;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pooled && buffer != null) {
+            release(buffer);
+        }
+        buffer = null;
+        view = null;
+        if (!ownsInput) {
+            return;
+        }
+        if (channel != null) {
+            channel.close();
+        } else {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the position in the file of the first byte not returned yet, that is the start of the next row.
+     */
+    long position() {
+        return bufferOffset + start;
+    }
+
+    private int indexOfDelimiter(final int from) {
+        final byte first = delimiter[0];
+        final int last = end - delimiter.length;
+        for (int i = from; i <= last; i++) {
+            if (buffer.get(i) == first) {
+                int j = 1;
+                while (j < delimiter.length && buffer.get(i + j) == delimiter[j]) {
+                    j++;
+                }
+                if (j == delimiter.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Converts bytes of a row to string. ASCII rows are converted byte per character, other rows are decoded with the charset.
+     */
+    private String toString(final int from, final int to) {
+
+        final int length = to - from;
+        if (rowBytes.length < length) {
+            rowBytes = new byte[Math.max(length, rowBytes.length * 2)];
+        }
+        view.limit(to);
+        view.position(from);
+        view.get(rowBytes, 0, length);
+
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits |= rowBytes[i];
+        }
+        if (bits >= 0) {
+            return new String(rowBytes, 0, length, ISO_8859_1);
+        }
+
+        final int maxChars = (int) (length * (double) decoder.maxCharsPerByte()) + 1;
+        if (chars.capacity() < maxChars) {
+            chars = CharBuffer.allocate(maxChars);
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(rowBytes, 0, length), chars, true);
+        decoder.flush(chars);
+        return new String(chars.array(), 0, chars.position());
+    }
+
+    /**
+     * Converts bytes of a row into the character array of the field slices. ASCII bytes are copied as characters, other rows are decoded
+     * with the charset.
+     */
+    private void decode(final int from, final int to, final FieldSlices row) {
+
+        final int length = to - from;
+        if (rowBytes.length < length) {
+            rowBytes = new byte[Math.max(length, rowBytes.length * 2)];
+        }
+        view.limit(to);
+        view.position(from);
+        view.get(rowBytes, 0, length);
+
+        char[] target = row.buffer(length);
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            final byte b = rowBytes[i];
+            bits |= b;
+            target[i] = (char) (b & 0xff);
+        }
+        if (bits >= 0) {
+            row.setLength(length);
+            return;
+        }
+
+        target = row.buffer((int) (length * (double) decoder.maxCharsPerByte()) + 1);
+        final CharBuffer out = CharBuffer.wrap(target);
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(rowBytes, 0, length), out, true);
+        decoder.flush(out);
+        row.setLength(out.position());
+    }
+
+    /**
+     * Moves the unconsumed bytes to the beginning of the buffer and reads next bytes. The buffer is grown only if a single row does not fit
+     * in it.
+     */
+    private void read() throws IOException {
+
+        if (start == end) {
+            bufferOffset += end;
+            start = 0;
+            end = 0;
+        } else if (end == buffer.capacity()) {
+            if (start > 0) {
+                buffer.limit(end);
+                buffer.position(start);
+                buffer.compact();
+                bufferOffset += start;
+                end -= start;
+                start = 0;
+            } else {
+                final ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(buffer.capacity() * 2) : ByteBuffer
+                        .allocate(buffer.capacity() * 2);
+                buffer.limit(end);
+                buffer.position(0);
+                grown.put(buffer);
+                if (pooled) {
+                    release(buffer);
+                    pooled = false;
+                }
+                setBuffer(grown);
+            }
+        }
+
+        final int count;
+        if (channel != null) {
+            buffer.limit(buffer.capacity());
+            buffer.position(end);
+            if (readPosition < 0) {
+                count = channel.read(buffer);
+            } else {
+                count = channel.read(buffer, readPosition);
+                if (count > 0) {
+                    readPosition += count;
+                }
+            }
+        } else {
+            count = stream.read(buffer.array(), buffer.arrayOffset() + end, buffer.capacity() - end);
+        }
+        if (count == -1) {
+            eof = true;
+        } else {
+            end += count;
+        }
+    }
+
+    /**
+     * Maps the next window of the file starting from the first unconsumed byte. The window is grown only if a single row does not fit in it.
+     */
+    private void map() throws IOException {
+
+        if (buffer != null && start == 0 && end == windowSize) {
+            windowSize *= 2;
+        }
+
+        final long offset = bufferOffset + start;
+        final int size = (int) Math.min(windowSize, fileSize - offset);
+        setBuffer(channel.map(FileChannel.MapMode.READ_ONLY, offset, size));
+        bufferOffset = offset;
+        start = 0;
+        end = size;
+        eof = offset + size >= fileSize;
+    }
+
+    private void setBuffer(final ByteBuffer buf) {
+        buffer = buf;
+        view = buf.duplicate();
+    }
+
+    private static ByteBuffer acquire(final int capacity) {
+        ByteBuffer buf = BUFFER_POOL.poll();
+        if (buf == null || buf.capacity() < capacity) {
+            buf = ByteBuffer.allocateDirect(capacity);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    private static void release(final ByteBuffer buf) {
+        BUFFER_POOL.offer(buf);
+    }
+
+    /**
+     * @return capacity of the largest buffer in the pool in bytes or 0 if the pool is empty
+     */
+    static int getLargestPooled() {
+        int largest = 0;
+        for (final ByteBuffer buf : BUFFER_POOL) {
+            largest = Math.max(largest, buf.capacity());
+        }
+        return largest;
+    }
+
+}
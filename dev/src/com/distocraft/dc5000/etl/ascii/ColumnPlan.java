@@ -0,0 +1,184 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binding of the columns of a file to measurement file keys. <br>
+ * <br>
+ * The plan is built once per file from the header, so rows are written with indexed lookups only: keys are trimmed in advance and the
+ * indexes of the DATETIME_ID column and of the columns used for FLS are resolved from the header. Without a header (data_id_mode 2) the
+ * keys are the column indexes. <br>
+ * <br>
+ * Rows that have a different number of columns than the header are handled by row_width_mode:
+ * <ul>
+ * <li>0 = rows wider than the header are skipped, narrower rows are written (default)</li>
+ * <li>1 = only rows with exactly as many columns as the header are written</li>
+ * <li>2 = columns exceeding the header are ignored, narrower rows are written</li>
+ * </ul>
+ *
+ */
+final class ColumnPlan {
+
+    private static final String[] FDN_COLUMNS = { "srcNodeFDN", "nodeFDN" };
+
+    private static final String[] TYPE_COLUMNS = { "nodeType", "srcNodeType" };
+
+    private static final String SOURCE_TYPE_COLUMN = "sourceType";
+
+    private final boolean positional;
+
+    private final int rowWidthMode;
+
+    private final String datatimeColumn;
+
+    private String[] keys;
+
+    private int datetimeIndex = -1;
+
+    private final int[] fdnIndexes;
+
+    private final int[] typeIndexes;
+
+    private final boolean[] typeNeedsValue;
+
+    private ColumnPlan(final List<?> header, final int datatimeMode, final String datatimeColumn, final int rowWidthMode) {
+        this.positional = header == null;
+        this.rowWidthMode = rowWidthMode;
+        this.datatimeColumn = datatimeMode == ASCIIParser.DATATIME_FROM_COLUMN ? datatimeColumn : null;
+
+        final List<Integer> fdns = new ArrayList<Integer>();
+        final List<Integer> types = new ArrayList<Integer>();
+
+        if (positional) {
+            keys = new String[0];
+        } else {
+            keys = new String[header.size()];
+            for (int i = 0; i < keys.length; i++) {
+                final String raw = (String) header.get(i);
+                keys[i] = raw.trim();
+                if (this.datatimeColumn != null && raw.equalsIgnoreCase(this.datatimeColumn)) {
+                    datetimeIndex = i;
+                }
+                if (contains(FDN_COLUMNS, keys[i])) {
+                    fdns.add(i);
+                }
+                if (contains(TYPE_COLUMNS, keys[i]) || SOURCE_TYPE_COLUMN.equals(keys[i])) {
+                    types.add(i);
+                }
+            }
+        }
+
+        fdnIndexes = toArray(fdns);
+        typeIndexes = toArray(types);
+        typeNeedsValue = new boolean[typeIndexes.length];
+        for (int i = 0; i < typeIndexes.length; i++) {
+            typeNeedsValue[i] = SOURCE_TYPE_COLUMN.equals(keys[typeIndexes[i]]);
+        }
+    }
+
+    /**
+     * Creates the plan for a file.
+     *
+     * @param header
+     *            column names of the file or null if the column indexes are used as keys
+     */
+    static ColumnPlan create(final List<?> header, final int datatimeMode, final String datatimeColumn, final int rowWidthMode) {
+        return new ColumnPlan(header, datatimeMode, datatimeColumn, rowWidthMode);
+    }
+
+    /**
+     * Returns the number of columns of a row that are written, or -1 if the row is not written at all.
+     */
+    int columnsToWrite(final int columns) {
+        if (positional) {
+            ensureKeys(columns);
+            return columns;
+        }
+        if (columns <= keys.length) {
+            return rowWidthMode == ASCIIParser.ROW_WIDTH_STRICT && columns < keys.length ? -1 : columns;
+        }
+        return rowWidthMode == ASCIIParser.ROW_WIDTH_TRUNCATE ? keys.length : -1;
+    }
+
+    /**
+     * Returns the key of a column. Valid for indexes below the value returned by {@link #columnsToWrite(int)}.
+     */
+    String getKey(final int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return number of columns in the header or -1 if the file has no header
+     */
+    int getWidth() {
+        return positional ? -1 : keys.length;
+    }
+
+    /**
+     * @return index of the DATETIME_ID column or -1 if DATETIME_ID is not read from a column
+     */
+    int getDatetimeIndex() {
+        return datetimeIndex;
+    }
+
+    /**
+     * Returns the node FDN of a row or the given default if the row has no FDN column.
+     */
+    String getNodeFdn(final String[] row, final int columns, final String defaultValue) {
+        String result = defaultValue;
+        for (final int index : fdnIndexes) {
+            if (index < columns) {
+                result = row[index];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the node type of a row or the given default if the row has no node type column. An empty sourceType is ignored.
+     */
+    String getNodeType(final String[] row, final int columns, final String defaultValue) {
+        String result = defaultValue;
+        for (int i = 0; i < typeIndexes.length; i++) {
+            final int index = typeIndexes[i];
+            if (index < columns && (!typeNeedsValue[i] || row[index].length() > 0)) {
+                result = row[index];
+            }
+        }
+        return result;
+    }
+
+    private void ensureKeys(final int columns) {
+        if (columns <= keys.length) {
+            return;
+        }
+        final int oldLength = keys.length;
+        keys = Arrays.copyOf(keys, columns);
+        for (int i = oldLength; i < columns; i++) {
+            keys[i] = Integer.toString(i);
+            if (datatimeColumn != null && keys[i].equalsIgnoreCase(datatimeColumn)) {
+                datetimeIndex = i;
+            }
+        }
+    }
+
+    private static boolean contains(final String[] values, final String value) {
+        for (final String v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.Arrays;
+
+/**
+ * Layout of a fixed width file configured by column_widths. <br>
+ * <br>
+ * Columns are sliced at fixed character offsets, so a row is tokenized without looking for delimiters. A row shorter than the layout has
+ * fewer columns, which are then handled by row_width_mode like narrower rows of a delimited file. Text after the last column is an extra
+ * column unless it is only whitespace. Padding is removed when the values are trimmed. Instances are immutable and can be shared between
+ * threads.
+ *
+ */
+final class ColumnWidths {
+
+    private final int[] widths;
+
+    private ColumnWidths(final int[] widths) {
+        this.widths = widths;
+    }
+
+    /**
+     * Parses comma separated column widths.
+     *
+     * @throws NumberFormatException
+     *             if a width is not a number
+     * @throws IllegalArgumentException
+     *             if a width is not positive
+     */
+    static ColumnWidths parse(final String spec) {
+        final String[] values = spec.split(",");
+        final int[] widths = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            widths[i] = Integer.parseInt(values[i].trim());
+            if (widths[i] <= 0) {
+                throw new IllegalArgumentException("Invalid column width " + widths[i] + " in " + spec);
+            }
+        }
+        return new ColumnWidths(widths);
+    }
+
+    /**
+     * @return number of columns of the layout
+     */
+    int size() {
+        return widths.length;
+    }
+
+    int getWidth(final int column) {
+        return widths[column];
+    }
+
+    /**
+     * Slices the columns of a row. Values are not trimmed.
+     */
+    String[] split(final String line) {
+        final int length = line.length();
+        final String[] result = new String[widths.length + 1];
+        int count = 0;
+        int from = 0;
+        for (int i = 0; i < widths.length && from < length; i++) {
+            final int to = Math.min(from + widths[i], length);
+            result[count++] = line.substring(from, to);
+            from = to;
+        }
+        if (from < length && !isBlank(line, from, length)) {
+            result[count++] = line.substring(from);
+        }
+        if (count == 0) {
+            return new String[] { line };
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static boolean isBlank(final String line, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < widths.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(widths[i]);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.regex.Pattern;
+
+/**
+ * Column or row delimiter configured for ASCIIParser. <br>
+ * <br>
+ * Delimiters are configured as regular expressions. The configured expression is classified once when the delimiter is created. An
+ * expression that only matches one fixed string (for example tab, \| or \r\n) is handled as a literal and split without the regexp
+ * engine. Other expressions are split with a precompiled Pattern. Instances are immutable and can be shared between threads.
+ *
+ */
+final class Delimiter {
+
+    static final int LITERAL_CHAR = 0;
+
+    static final int LITERAL_STRING = 1;
+
+    static final int REGEX = 2;
+
+    private static final String REGEX_CHARACTERS = ".$|()[]{}^?*+\\";
+
+    private static final String[] EMPTY = new String[0];
+
+    private final String expression;
+
+    private final int type;
+
+    private final String literal;
+
+    private final char literalChar;
+
+    private final Pattern pattern;
+
+    private Delimiter(final String expression, final String literal) {
+        this.expression = expression;
+        this.literal = literal;
+        if (literal == null) {
+            this.type = REGEX;
+            this.literalChar = 0;
+            this.pattern = Pattern.compile(expression);
+        } else if (literal.length() == 1) {
+            this.type = LITERAL_CHAR;
+            this.literalChar = literal.charAt(0);
+            this.pattern = null;
+        } else {
+            this.type = LITERAL_STRING;
+            this.literalChar = 0;
+            this.pattern = null;
+        }
+    }
+
+    /**
+     * Classifies and compiles a delimiter expression.
+     *
+     * @param expression
+     *            delimiter as regular expression
+     * @return delimiter
+     */
+    static Delimiter compile(final String expression) {
+        return new Delimiter(expression, toLiteral(expression));
+    }
+
+    /**
+     * Returns the fixed string matched by the expression or null if the expression is a real regular expression.
+     */
+    static String toLiteral(final String expression) {
+
+        if (expression == null || expression.length() == 0) {
+            return null;
+        }
+
+        final StringBuilder sb = new StringBuilder(expression.length());
+        for (int i = 0; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (c == '\\') {
+                if (++i == expression.length()) {
+                    return null;
+                }
+                final char e = expression.charAt(i);
+                if (e == 't') {
+                    sb.append('\t');
+                } else if (e == 'n') {
+                    sb.append('\n');
+                } else if (e == 'r') {
+                    sb.append('\r');
+                } else if (e == 'f') {
+                    sb.append('\f');
+                } else if (!Character.isLetterOrDigit(e)) {
+                    sb.append(e);
+                } else {
+                    return null;
+                }
+            } else if (REGEX_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    String getExpression() {
+        return expression;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    boolean isLiteral() {
+        return type != REGEX;
+    }
+
+    /**
+     * @return the fixed string of a literal delimiter or null
+     */
+    String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return compiled pattern of a regexp delimiter or null
+     */
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Splits a string around the delimiter. Result is the same as with String.split(expression): trailing empty strings are removed and a
+     * string without delimiters is returned as is.
+     *
+     * @param s
+     *            string to split
+     * @return array of fields
+     */
+    String[] split(final String s) {
+
+        if (type == REGEX) {
+            return pattern.split(s);
+        }
+
+        final int length = s.length();
+        final int delimLength = literal.length();
+
+        // count fields up to the last non empty one
+        int count = 0;
+        int fields = 0;
+        int from = 0;
+        int index;
+        while ((index = indexOf(s, from)) >= 0) {
+            count++;
+            if (index > from) {
+                fields = count;
+            }
+            from = index + delimLength;
+        }
+
+        if (count == 0) {
+            return new String[] { s };
+        }
+
+        if (from < length) {
+            fields = count + 1;
+        }
+
+        if (fields == 0) {
+            return EMPTY;
+        }
+
+        final String[] result = new String[fields];
+        from = 0;
+        for (int i = 0; i < fields; i++) {
+            index = indexOf(s, from);
+            if (index < 0) {
+                index = length;
+            }
+            result[i] = s.substring(from, index);
+            from = index + delimLength;
+        }
+        return result;
+    }
+
+    private int indexOf(final String s, final int from) {
+        if (type == LITERAL_CHAR) {
+            return s.indexOf(literalChar, from);
+        }
+        return s.indexOf(literal, from);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.common.StaticProperties;
+
+/**
+ * Logging of row level problems of one parser. <br>
+ * <br>
+ * Skipped rows are counted per {@link RejectReason} for each file. The first skipped row of a reason is logged with the stack trace of its
+ * exception, the next ones up to ASCIIParser.logFirst (default 10) without it, and after that only every ASCIIParser.logSampleEvery:th
+ * (default 1000) row with the count so far. The counts of all reasons are logged when the file is finished. Messages are not built unless
+ * they are logged. If a reject directory is given for the file, every skipped row is also written to a {@link RejectFile}. The line of a
+ * row parsed without one is read again from its {@link RowSource} only if it is written or logged. <br>
+ * <br>
+ * Row level messages are logged to a child logger of the parser logger named ...rows. If ASCIIParser.asyncLogging is true (default) the
+ * child logger hands its records to the parser logger through an {@link AsyncLogHandler} with a queue of ASCIIParser.logQueueSize
+ * (default 10000) records, so a flood of bad rows does not wait for log I/O. <br>
+ * <br>
+ * Not thread safe, every parser instance has its own.
+ *
+ */
+final class Diagnostics {
+
+    /**
+     * Reads the line of a skipped row again from the sourcefile.
+     */
+    interface RowSource {
+
+        /**
+         * @return the row at the position or null if the position is at the end of the file
+         */
+        String readRow(long offset) throws IOException;
+    }
+
+    private final Logger log;
+
+    private final Logger rowLog;
+
+    private final int logFirst;
+
+    private final int sampleEvery;
+
+    /**
+     * Skipped rows of the current file by ordinal of the reason.
+     */
+    private final long[] skipped = new long[RejectReason.values().length];
+
+    private boolean tracing;
+
+    private RejectFile rejectFile;
+
+    Diagnostics(final Logger log) {
+        this(log, getStaticInt("ASCIIParser.logFirst", 10), getStaticInt("ASCIIParser.logSampleEvery", 1000),
+                "true".equalsIgnoreCase(StaticProperties.getProperty("ASCIIParser.asyncLogging", "true").trim()) ? getStaticInt(
+                        "ASCIIParser.logQueueSize", 10000) : 0);
+    }
+
+    /**
+     * @param logQueueSize
+     *            size of the queue of asynchronous logging, 0 to log synchronously
+     */
+    Diagnostics(final Logger log, final int logFirst, final int sampleEvery, final int logQueueSize) {
+        this.log = log;
+        this.rowLog = Logger.getLogger(log.getName() + ".rows");
+        this.logFirst = Math.max(logFirst, 1);
+        this.sampleEvery = Math.max(sampleEvery, 1);
+        if (logQueueSize > 0) {
+            AsyncLogHandler.install(rowLog, logQueueSize);
+        }
+        this.tracing = log.isLoggable(Level.FINEST);
+    }
+
+    private static int getStaticInt(final String name, final int defaultValue) {
+        try {
+            return Integer.parseInt(StaticProperties.getProperty(name, Integer.toString(defaultValue)).trim());
+        } catch (final Exception e) {
+            return defaultValue;
+        }
+    }
+
+    Logger getRowLog() {
+        return rowLog;
+    }
+
+    /**
+     * Starts counting for a new file and checks if tracing is enabled.
+     */
+    void fileStarted() {
+        fileStarted(null, null);
+    }
+
+    /**
+     * Starts counting for a new file whose skipped rows are written to a reject file.
+     *
+     * @param rejectDir
+     *            directory of the reject file or null if rejected rows are not written
+     */
+    void fileStarted(final File rejectDir, final String filename) {
+        closeRejectFile();
+        Arrays.fill(skipped, 0);
+        rejectFile = rejectDir == null ? null : new RejectFile(rejectDir, filename);
+        tracing = log.isLoggable(Level.FINEST);
+    }
+
+    /**
+     * @return true if FINEST is logged. Checked once per file, so messages of every row can be guarded cheaply.
+     */
+    boolean isTracing() {
+        return tracing;
+    }
+
+    /**
+     * Counts a skipped row, writes it to the reject file and logs it if it is among the first ones of the reason or sampled.
+     *
+     * @param reason
+     *            reason of skipping, rows with the same reason are counted together
+     * @param offset
+     *            position of the row in the sourcefile in bytes or -1 if not known
+     * @param e
+     *            cause of skipping or null
+     */
+    void rowSkipped(final RejectReason reason, final long lineNum, final long offset, final String line, final Throwable e) {
+        rowSkipped(reason, lineNum, offset, line, null, e);
+    }
+
+    /**
+     * Counts a skipped row whose line may not be known.
+     *
+     * @param source
+     *            source of the line if it is null and is written or logged, or null
+     */
+    void rowSkipped(final RejectReason reason, final long lineNum, final long offset, String line, final RowSource source, final Throwable e) {
+        final long n = ++skipped[reason.ordinal()];
+        final boolean logged = (n <= logFirst || n % sampleEvery == 0) && rowLog.isLoggable(Level.WARNING);
+
+        if (line == null && source != null && (rejectFile != null || logged)) {
+            line = readRow(source, offset);
+        }
+
+        if (rejectFile != null) {
+            try {
+                rejectFile.write(lineNum, offset, reason, line);
+            } catch (final IOException ioe) {
+                log.log(Level.WARNING, "Writing rejected rows to " + rejectFile.getFile() + " failed", ioe);
+                closeRejectFile();
+                rejectFile = null;
+            }
+        }
+
+        if (!logged) {
+            return;
+        }
+        if (n == 1) {
+            rowLog.log(Level.WARNING, message(reason, lineNum, line), e);
+        } else if (n <= logFirst) {
+            rowLog.log(Level.WARNING, message(reason, lineNum, line) + (e == null ? "" : " " + e));
+        } else {
+            rowLog.log(Level.WARNING, message(reason, lineNum, line) + ", " + n + " rows skipped for this reason so far");
+        }
+    }
+
+    private String readRow(final RowSource source, final long offset) {
+        try {
+            return source.readRow(offset);
+        } catch (final IOException e) {
+            log.log(Level.FINE, "Could not read skipped row at " + offset + " again", e);
+            return null;
+        }
+    }
+
+    private static String message(final RejectReason reason, final long lineNum, final String line) {
+        return "Error while parsing dataline, skipping(" + lineNum + "): " + reason + ": " + line;
+    }
+
+    long getSkipped(final RejectReason reason) {
+        return skipped[reason.ordinal()];
+    }
+
+    /**
+     * Closes the reject file and logs the number of skipped rows of every reason.
+     */
+    void fileFinished(final String filename) {
+        final File written = rejectFile != null && rejectFile.getRows() > 0 ? rejectFile.getFile() : null;
+        closeRejectFile();
+        rejectFile = null;
+
+        StringBuilder sb = null;
+        for (RejectReason reason : RejectReason.values()) {
+            final long count = skipped[reason.ordinal()];
+            if (count > 0) {
+                if (sb == null) {
+                    sb = new StringBuilder("Rows skipped in ").append(filename).append(':');
+                } else {
+                    sb.append(',');
+                }
+                sb.append(' ').append(reason).append(' ').append(count);
+            }
+        }
+        if (sb != null) {
+            if (written != null) {
+                sb.append(", rows written to ").append(written);
+            }
+            rowLog.warning(sb.toString());
+        }
+        Arrays.fill(skipped, 0);
+    }
+
+    private void closeRejectFile() {
+        if (rejectFile != null) {
+            try {
+                rejectFile.close();
+            } catch (final IOException e) {
+                log.log(Level.WARNING, "Closing " + rejectFile.getFile() + " failed", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.nio.CharBuffer;
+
+/**
+ * Characters of one row and the offsets of its fields. <br>
+ * <br>
+ * The same instance is reused for every row of a file: a {@link ByteRowScanner} decodes the row into the character array and the fields
+ * are found with a literal column delimiter as offsets into it. A String is created only when a field is asked for with {@link #get(int)},
+ * trimmed by moving the offsets, so fields that are not written and the row itself are never copied. The fields are the same as
+ * {@link Delimiter#split(String)} returns, or {@link ColumnWidths#split(String)} for a fixed width file. <br>
+ * <br>
+ * As a CharSequence the instance is the whole row. Not thread safe.
+ *
+ */
+final class FieldSlices implements CharSequence {
+
+    private final Delimiter delimiter;
+
+    private final ColumnWidths widths;
+
+    private char[] chars = new char[1024];
+
+    private int length;
+
+    private int[] starts = new int[64];
+
+    private int[] ends = new int[64];
+
+    private int size;
+
+    /**
+     * @param delimiter
+     *            literal column delimiter
+     * @throws IllegalArgumentException
+     *             if the delimiter is a regular expression
+     */
+    FieldSlices(final Delimiter delimiter) {
+        if (!delimiter.isLiteral()) {
+            throw new IllegalArgumentException("Literal column delimiter required: " + delimiter);
+        }
+        this.delimiter = delimiter;
+        this.widths = null;
+    }
+
+    /**
+     * @param widths
+     *            layout of a fixed width file
+     */
+    FieldSlices(final ColumnWidths widths) {
+        this.delimiter = null;
+        this.widths = widths;
+    }
+
+    /**
+     * Returns the character array of the next row, at least of the given capacity. The content is replaced by the next row.
+     */
+    char[] buffer(final int capacity) {
+        if (chars.length < capacity) {
+            chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+        length = 0;
+        size = 0;
+        return chars;
+    }
+
+    /**
+     * Sets the length of the row written to the {@link #buffer(int)}.
+     */
+    void setLength(final int length) {
+        this.length = length;
+        this.size = 0;
+    }
+
+    /**
+     * Finds the fields of the row.
+     *
+     * @return number of fields
+     */
+    int split() {
+        if (widths != null) {
+            return slice();
+        }
+        final String literal = delimiter.getLiteral();
+        final int delimLength = literal.length();
+        final char first = literal.charAt(0);
+
+        size = 0;
+        int from = 0;
+        // number of fields up to the last non empty one
+        int fields = 0;
+        for (int i = 0; i <= length - delimLength; i++) {
+            if (chars[i] == first && matches(literal, i)) {
+                add(from, i);
+                if (i > from) {
+                    fields = size;
+                }
+                from = i + delimLength;
+                i = from - 1;
+            }
+        }
+
+        if (size == 0) {
+            // row without delimiters is one field
+            add(0, length);
+            return size;
+        }
+        if (from < length) {
+            add(from, length);
+            fields = size;
+        }
+        size = fields;
+        return size;
+    }
+
+    private int slice() {
+        size = 0;
+        int from = 0;
+        for (int i = 0; i < widths.size() && from < length; i++) {
+            final int to = Math.min(from + widths.getWidth(i), length);
+            add(from, to);
+            from = to;
+        }
+        if (from < length && !isBlank(from)) {
+            add(from, length);
+        }
+        if (size == 0) {
+            add(0, length);
+        }
+        return size;
+    }
+
+    private boolean matches(final String literal, final int at) {
+        for (int j = 1; j < literal.length(); j++) {
+            if (chars[at + j] != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(final int start, final int end) {
+        if (size == starts.length) {
+            starts = grow(starts);
+            ends = grow(ends);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    private static int[] grow(final int[] array) {
+        final int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    /**
+     * @return number of fields found by {@link #split()}
+     */
+    int size() {
+        return size;
+    }
+
+    int start(final int field) {
+        return starts[field];
+    }
+
+    int end(final int field) {
+        return ends[field];
+    }
+
+    /**
+     * Creates the trimmed value of a field.
+     */
+    String get(final int field) {
+        return get(field, null);
+    }
+
+    /**
+     * Returns the trimmed value of a field from the dictionary. A String is created only if the value is not found.
+     *
+     * @param dictionary
+     *            dictionary of values or null to create a new String
+     */
+    String get(final int field, final ValueDictionary dictionary) {
+        int start = starts[field];
+        int end = ends[field];
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        if (dictionary != null) {
+            return dictionary.get(chars, start, end);
+        }
+        return start == end ? "" : new String(chars, start, end - start);
+    }
+
+    /**
+     * @return true if the row contains only whitespace like String.trim() removes
+     */
+    boolean isBlank() {
+        return isBlank(0);
+    }
+
+    private boolean isBlank(final int from) {
+        for (int i = from; i < length; i++) {
+            if (chars[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return CharBuffer.wrap(chars, start, end - start);
+    }
+
+    /**
+     * @return the row as a new String
+     */
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+}
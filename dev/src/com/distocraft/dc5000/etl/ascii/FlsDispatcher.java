@@ -0,0 +1,364 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.rmi.Naming;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.common.RmiUrlFactory;
+import com.distocraft.dc5000.common.StaticProperties;
+import com.ericsson.eniq.enminterworking.EnmInterCommonUtils;
+import com.ericsson.eniq.enminterworking.IEnmInterworkingRMI;
+
+/**
+ * Sends FLS notifications of all ASCIIParser workers of the JVM to the multi ES engine in background threads. <br>
+ * <br>
+ * Parser threads only put notifications into a bounded queue. A notification that is already waiting in the queue is not queued again. If
+ * the queue stays full longer than the configured timeout the notification is dropped and counted. The notifications of a file are queued
+ * together and wait for the timeout once in all. Failed RMI calls are retried with
+ * exponential backoff and the RMI object is looked up again after a failure. A separate thread puts a failed notification back to the
+ * queue when its delay is over, so the sending threads go on with the next notifications while a failed one waits, and retries are sent
+ * by the sending threads like the other notifications. <br>
+ * <br>
+ * Configuration is read from StaticProperties when the dispatcher is first used:
+ * <ul>
+ * <li>ASCIIParser.flsThreads - number of sending threads, default 1</li>
+ * <li>ASCIIParser.flsQueueSize - capacity of the queue, default 10000</li>
+ * <li>ASCIIParser.flsQueueTimeout - milliseconds a parser waits for space in a full queue before dropping, default 0</li>
+ * <li>ASCIIParser.flsRetries - number of retries of a failed notification, default 3</li>
+ * <li>ASCIIParser.flsRetryDelay - delay before the first retry in milliseconds, doubled for every next retry, default 1000</li>
+ * </ul>
+ * The counters of the dispatcher are shown by every {@link ParserStatsMBean}.
+ *
+ */
+final class FlsDispatcher {
+
+    /**
+     * Sends one notification to the engine.
+     */
+    interface Sender {
+
+        void send(FlsNotification notification) throws Exception;
+
+    }
+
+    private static final Logger LOG = Logger.getLogger("etl.parser.ASCII.FlsDispatcher");
+
+    private static final int DROP_LOG_INTERVAL = 1000;
+
+    private static FlsDispatcher instance;
+
+    private final Sender sender;
+
+    private final BlockingQueue<Delivery> queue;
+
+    private final Set<FlsNotification> pending = ConcurrentHashMap.<FlsNotification> newKeySet();
+
+    private final long queueTimeout;
+
+    private final int retries;
+
+    private final long retryDelay;
+
+    private final Thread[] threads;
+
+    private final ScheduledExecutorService retryScheduler;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    FlsDispatcher(final Sender sender, final int threadCount, final int queueSize, final long queueTimeout, final int retries,
+            final long retryDelay) {
+        this.sender = sender;
+        this.queue = new LinkedBlockingQueue<Delivery>(queueSize);
+        this.queueTimeout = queueTimeout;
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+
+        final ThreadFactory factory = new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "ASCIIParser-FLS-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+        this.threads = new Thread[Math.max(threadCount, 1)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = factory.newThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatch();
+                }
+            });
+            threads[i].start();
+        }
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "ASCIIParser-FLS-retry");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Returns the dispatcher of the JVM. The dispatcher is created on first call.
+     */
+    static synchronized FlsDispatcher getInstance() {
+        if (instance == null) {
+            instance = new FlsDispatcher(new RmiSender(), getInt("ASCIIParser.flsThreads", 1), getInt("ASCIIParser.flsQueueSize", 10000),
+                    getInt("ASCIIParser.flsQueueTimeout", 0), getInt("ASCIIParser.flsRetries", 3), getInt("ASCIIParser.flsRetryDelay", 1000));
+            LOG.info("FLS dispatcher started with " + instance.threads.length + " threads");
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the dispatcher of the JVM if it has been started, otherwise null. Does not start it.
+     */
+    static synchronized FlsDispatcher getStarted() {
+        return instance;
+    }
+
+    private static int getInt(final String name, final int defaultValue) {
+        try {
+            return Integer.parseInt(StaticProperties.getProperty(name, Integer.toString(defaultValue)).trim());
+        } catch (final Exception e) {
+            LOG.warning("Invalid value for " + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Queues a notification. Never blocks longer than the configured queue timeout.
+     *
+     * @return false if the notification was dropped because the queue is full
+     */
+    boolean submit(final FlsNotification notification) {
+        return offer(notification, deadline());
+    }
+
+    /**
+     * Queues the notifications of a file. Waits for space in a full queue at most the configured queue timeout in all, the notifications
+     * that do not fit by then are dropped.
+     *
+     * @return number of notifications dropped
+     */
+    int submitAll(final Collection<FlsNotification> notifications) {
+        final long deadline = deadline();
+        int droppedCount = 0;
+        for (FlsNotification notification : notifications) {
+            if (!offer(notification, deadline)) {
+                droppedCount++;
+            }
+        }
+        return droppedCount;
+    }
+
+    private long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+    }
+
+    private boolean offer(final FlsNotification notification, final long deadline) {
+
+        submitted.incrementAndGet();
+
+        if (!pending.add(notification)) {
+            coalesced.incrementAndGet();
+            return true;
+        }
+
+        boolean queued = false;
+        try {
+            final long wait = deadline - System.nanoTime();
+            final Delivery delivery = new Delivery(notification, 0, retryDelay);
+            queued = wait > 0 ? queue.offer(delivery, wait, TimeUnit.NANOSECONDS) : queue.offer(delivery);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!queued) {
+            pending.remove(notification);
+            final long count = dropped.incrementAndGet();
+            if (count % DROP_LOG_INTERVAL == 1) {
+                LOG.warning("FLS queue is full, " + count + " notifications dropped so far. Dropped " + notification);
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Stops the sending threads. Notifications still in the queue or waiting for a retry are not sent.
+     */
+    void shutdown() {
+        running = false;
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        retryScheduler.shutdownNow();
+    }
+
+    private void dispatch() {
+        while (running) {
+            final Delivery delivery;
+            try {
+                delivery = queue.take();
+            } catch (final InterruptedException e) {
+                continue;
+            }
+            if (delivery.attempt == 0) {
+                pending.remove(delivery.notification);
+            }
+            deliver(delivery);
+        }
+    }
+
+    /**
+     * Sends a notification. If sending fails, the next attempt is queued again after the delay and the calling thread returns at once.
+     */
+    private void deliver(final Delivery delivery) {
+        if (!running) {
+            return;
+        }
+        final FlsNotification notification = delivery.notification;
+        try {
+            LOG.info("In FLS mode. Adding FDN to the Automatic Node Assignment Blocking Queue " + notification);
+            sender.send(notification);
+            sent.incrementAndGet();
+        } catch (final Exception e) {
+            if (delivery.attempt >= retries) {
+                failed.incrementAndGet();
+                LOG.log(Level.WARNING, "Exception occured while adding FDN to Blocking Queue! Giving up " + notification, e);
+                return;
+            }
+            retried.incrementAndGet();
+            LOG.log(Level.FINE, "Adding FDN to Blocking Queue failed, retrying in " + delivery.delay + " ms", e);
+            scheduleRetry(new Delivery(notification, delivery.attempt + 1, delivery.delay * 2), delivery.delay);
+        }
+    }
+
+    /**
+     * Queues a retry after the delay. If the queue is full then, the retry waits another delay instead of blocking the scheduling thread.
+     */
+    private void scheduleRetry(final Delivery retry, final long delay) {
+        try {
+            retryScheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (running && !queue.offer(retry)) {
+                        scheduleRetry(retry, delay);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException re) {
+            // shut down
+        }
+    }
+
+    int getQueueLength() {
+        return queue.size();
+    }
+
+    long getSubmitted() {
+        return submitted.get();
+    }
+
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getSent() {
+        return sent.get();
+    }
+
+    long getRetried() {
+        return retried.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * A queued attempt to send a notification.
+     */
+    private static final class Delivery {
+
+        final FlsNotification notification;
+
+        /**
+         * Number of failed attempts before this one.
+         */
+        final int attempt;
+
+        /**
+         * Delay before the next attempt if this one fails, in milliseconds.
+         */
+        final long delay;
+
+        Delivery(final FlsNotification notification, final int attempt, final long delay) {
+            this.notification = notification;
+            this.attempt = attempt;
+            this.delay = delay;
+        }
+    }
+
+    /**
+     * Sends notifications with RMI. The remote object is looked up on first use and again after any failure.
+     */
+    private static final class RmiSender implements Sender {
+
+        private volatile IEnmInterworkingRMI multiEs;
+
+        @Override
+        public void send(final FlsNotification notification) throws Exception {
+            IEnmInterworkingRMI rmi = multiEs;
+            if (rmi == null) {
+                rmi = (IEnmInterworkingRMI) Naming.lookup(RmiUrlFactory.getInstance().getMultiESRmiUrl(EnmInterCommonUtils.getEngineIP()));
+                multiEs = rmi;
+            }
+            try {
+                rmi.addingToBlockingQueue(notification.getNeType(), notification.getNodeFDN(), notification.getEnmHostName());
+            } catch (final Exception e) {
+                multiEs = null;
+                throw e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.distocraft.dc5000.etl.ascii;
+
+/**
+ * Node that is added to the Automatic Node Assignment blocking queue of the multi ES engine when FLS is enabled.
+ *
+ */
+final class FlsNotification {
+
+    private final String neType;
+
+    private final String nodeFDN;
+
+    private final String enmHostName;
+
+    FlsNotification(final String neType, final String nodeFDN, final String enmHostName) {
+        this.neType = neType;
+        this.nodeFDN = nodeFDN;
+        this.enmHostName = enmHostName;
+    }
+
+    String getNeType() {
+        return neType;
+    }
+
+    String getNodeFDN() {
+        return nodeFDN;
+    }
+
+    String getEnmHostName() {
+        return enmHostName;
+    }
+
+    @Override
+    public int hashCode() {
+        return (neType.hashCode() * 31 + nodeFDN.hashCode()) * 31 + enmHostName.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FlsNotification)) {
+            return false;
+        }
+        final FlsNotification other = (FlsNotification) obj;
+        return neType.equals(other.neType) && nodeFDN.equals(other.nodeFDN) && enmHostName.equals(other.enmHostName);
+    }
+
+    @Override
+    public String toString() {
+        return neType + " " + nodeFDN + " " + enmHostName;
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompressing stream of a gzip compressed sourcefile. <br>
+ * <br>
+ * Unlike java.util.zip.GZIPInputStream the stream takes its Inflater and input buffer from a pool and returns them when it is closed, so
+ * parsing many small compressed files does not allocate native inflater memory for each file. Files of several concatenated gzip members
+ * are read as one stream and the CRC and size of every member are checked. <br>
+ * <br>
+ * Gzip is detected from the magic bytes of the file, see {@link #open(InputStream, boolean)}.
+ *
+ */
+final class GzipInputStream extends InputStream {
+
+    /**
+     * Size of the pooled input buffers in bytes.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int POOL_SIZE = 16;
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    private static final int FHCRC = 2;
+
+    private static final int FEXTRA = 4;
+
+    private static final int FNAME = 8;
+
+    private static final int FCOMMENT = 16;
+
+    private static final BlockingQueue<Inflater> INFLATER_POOL = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+
+    private static final BlockingQueue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<byte[]>(POOL_SIZE);
+
+    private final InputStream in;
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] single = new byte[1];
+
+    private Inflater inflater;
+
+    private byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    private boolean eos;
+
+    /**
+     * Creates stream decompressing the given stream that is positioned at the beginning of a gzip member.
+     *
+     * @throws IOException
+     *             if the stream does not start with a valid gzip header
+     */
+    GzipInputStream(final InputStream in) throws IOException {
+        this.in = in;
+        this.inflater = acquireInflater();
+        this.buffer = acquireBuffer();
+        try {
+            readHeader();
+        } catch (final IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a stream of the uncompressed content of a sourcefile. A FileInputStream or a stream supporting mark that is not gzip
+     * compressed is returned as it is, so the caller can still use its channel or buffer.
+     *
+     * @param in
+     *            opened stream of the sourcefile
+     * @param background
+     *            true if the content is decompressed by a background thread
+     */
+    static InputStream open(final InputStream in, final boolean background) throws IOException {
+        final InputStream source;
+        final boolean gzip;
+        if (in instanceof FileInputStream) {
+            final FileChannel channel = ((FileInputStream) in).getChannel();
+            final long start = channel.position();
+            gzip = in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+            channel.position(start);
+            source = in;
+        } else if (in.markSupported()) {
+            in.mark(2);
+            gzip = in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+            in.reset();
+            source = in;
+        } else {
+            final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+            final int first = pushback.read();
+            final int second = first == -1 ? -1 : pushback.read();
+            if (second != -1) {
+                pushback.unread(second);
+            }
+            if (first != -1) {
+                pushback.unread(first);
+            }
+            gzip = first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2;
+            source = pushback;
+        }
+
+        if (!gzip) {
+            return source;
+        }
+        final GzipInputStream gzipStream = new GzipInputStream(source);
+        return background ? new BackgroundInputStream(gzipStream, BUFFER_SIZE) : gzipStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (inflater == null) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (!eos) {
+            final int count;
+            try {
+                count = inflater.inflate(b, off, len);
+            } catch (final DataFormatException e) {
+                throw new IOException("Invalid gzip data: " + e.getMessage(), e);
+            }
+            if (count > 0) {
+                crc.update(b, off, count);
+                return count;
+            }
+            if (inflater.finished()) {
+                position = limit - inflater.getRemaining();
+                readTrailer();
+                if (!nextMember()) {
+                    eos = true;
+                }
+            } else if (inflater.needsDictionary()) {
+                throw new IOException("Invalid gzip data: preset dictionary");
+            } else if (inflater.needsInput()) {
+                if (position == limit && !fill()) {
+                    throw new EOFException("Unexpected end of gzip data");
+                }
+                inflater.setInput(buffer, position, limit - position);
+                position = limit;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return inflater == null || eos ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            release();
+            in.close();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (readByte() != GZIP_MAGIC_1 || readByte() != GZIP_MAGIC_2) {
+            throw new IOException("Not in gzip format");
+        }
+        if (readByte() != 8) {
+            throw new IOException("Unsupported gzip compression method");
+        }
+        final int flags = readByte();
+        // modification time, extra flags and operating system
+        skip(6);
+        if ((flags & FEXTRA) != 0) {
+            skip(readByte() | readByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+                // file name is not used
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+                // comment is not used
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+        crc.reset();
+    }
+
+    private void readTrailer() throws IOException {
+        final long expectedCrc = readInt();
+        final long expectedSize = readInt();
+        if (expectedCrc != crc.getValue()) {
+            throw new IOException("Corrupt gzip data: CRC mismatch");
+        }
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new IOException("Corrupt gzip data: size mismatch");
+        }
+    }
+
+    /**
+     * Starts the next member of a concatenated file.
+     *
+     * @return false if there are no more members
+     */
+    private boolean nextMember() throws IOException {
+        if (position == limit && !fill()) {
+            return false;
+        }
+        if ((buffer[position] & 0xff) != GZIP_MAGIC_1) {
+            // trailing garbage is ignored like in GZIPInputStream
+            return false;
+        }
+        inflater.reset();
+        readHeader();
+        return true;
+    }
+
+    private long readInt() throws IOException {
+        return (readByte() | readByte() << 8 | readByte() << 16 | (long) readByte() << 24) & 0xffffffffL;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private void skip(final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * Reads the next bytes of the compressed stream into the buffer.
+     *
+     * @return false if the end of the stream is reached
+     */
+    private boolean fill() throws IOException {
+        final int count = in.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private void release() {
+        inflater.reset();
+        if (!INFLATER_POOL.offer(inflater)) {
+            inflater.end();
+        }
+        BUFFER_POOL.offer(buffer);
+        inflater = null;
+        buffer = null;
+    }
+
+    private static Inflater acquireInflater() {
+        final Inflater pooled = INFLATER_POOL.poll();
+        return pooled != null ? pooled : new Inflater(true);
+    }
+
+    private static byte[] acquireBuffer() {
+        final byte[] pooled = BUFFER_POOL.poll();
+        return pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+}
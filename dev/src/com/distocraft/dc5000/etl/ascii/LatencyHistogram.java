@@ -0,0 +1,95 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative long values with fixed memory and a relative error of at most 1/64. <br>
+ * <br>
+ * Values below 128 have a bucket of their own. Larger values are divided into 64 buckets per power of two, so the bucket of a value is
+ * found from its highest bits without searching. Recording is thread safe and takes no locks.
+ *
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+
+    private static final int HALF = 1 << (SUB_BITS - 1);
+
+    private static final int BUCKETS = (64 - SUB_BITS) * HALF + (1 << SUB_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    static int index(final long value) {
+        if (value < (1 << SUB_BITS)) {
+            return value < 0 ? 0 : (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+        return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return highest value that is recorded into the bucket
+     */
+    static long highestValue(final int index) {
+        if (index < (1 << SUB_BITS)) {
+            return index;
+        }
+        final int shift = (index >> (SUB_BITS - 1)) - 1;
+        final long mantissa = index - ((long) shift << (SUB_BITS - 1));
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    void record(final long value) {
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * @param percentile
+     *            0 - 100
+     * @return highest value of the bucket the percentile falls into, 0 if nothing is recorded
+     */
+    long getValueAtPercentile(final double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+}
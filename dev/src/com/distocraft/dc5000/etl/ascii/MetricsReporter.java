@@ -0,0 +1,170 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.common.StaticProperties;
+
+/**
+ * Reports the throughput and latency of every {@link ParserStats} periodically as one metrics record per parser set. <br>
+ * <br>
+ * A record covers one interval: files, rows, bytes and skipped lines of the interval, bytes and rows per second, percentiles of the parse
+ * time of a file and of its cost per row, and the slowest stage so far. Sets without files during the interval are not reported. Records
+ * are logged at INFO to etl.parser.ASCII.metrics and appended to a metrics file if one is configured. <br>
+ * <br>
+ * Configuration is read from StaticProperties when the first parser set is created:
+ * <ul>
+ * <li>ASCIIParser.metricsInterval - length of the interval in seconds, 0 disables reporting, default 300</li>
+ * <li>ASCIIParser.metricsFile - file the records are appended to, default none</li>
+ * </ul>
+ *
+ */
+final class MetricsReporter implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger("etl.parser.ASCII.metrics");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static MetricsReporter instance;
+
+    private final String metricsFile;
+
+    private final Map<ParserStats, long[]> previous = new HashMap<ParserStats, long[]>();
+
+    private long lastReport = System.currentTimeMillis();
+
+    MetricsReporter(final String metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    static synchronized void start() {
+        if (instance != null) {
+            return;
+        }
+        long interval = 300;
+        String file = "";
+        try {
+            interval = Long.parseLong(StaticProperties.getProperty("ASCIIParser.metricsInterval", "300").trim());
+            file = StaticProperties.getProperty("ASCIIParser.metricsFile", "").trim();
+        } catch (final Exception e) {
+            // defaults are used
+        }
+        instance = new MetricsReporter(file);
+        if (interval <= 0) {
+            return;
+        }
+
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "ASCIIParser-metrics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.scheduleAtFixedRate(instance, interval, interval, TimeUnit.SECONDS);
+        LOG.fine("Reporting metrics every " + interval + " seconds" + (file.length() > 0 ? " to " + file : ""));
+    }
+
+    @Override
+    public void run() {
+        try {
+            report();
+        } catch (final Exception e) {
+            // the next interval is still reported
+            LOG.log(Level.WARNING, "Reporting metrics failed", e);
+        }
+    }
+
+    void report() {
+        final long now = System.currentTimeMillis();
+        final long elapsed = Math.max(now - lastReport, 1);
+        lastReport = now;
+
+        Writer out = null;
+        try {
+            for (ParserStats stats : ParserStats.getInstances()) {
+                final String record = record(stats, elapsed);
+                if (record == null) {
+                    continue;
+                }
+                LOG.info(record);
+                if (metricsFile.length() > 0) {
+                    if (out == null) {
+                        out = new OutputStreamWriter(new FileOutputStream(metricsFile, true), UTF8);
+                    }
+                    out.write(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(now)) + " " + record + "\n");
+                }
+            }
+        } catch (final IOException e) {
+            LOG.log(Level.WARNING, "Writing metrics to " + metricsFile + " failed", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    LOG.log(Level.FINE, "Closing " + metricsFile + " failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the record of one parser set for the interval that ended and starts the next interval.
+     *
+     * @return the record or null if no files were parsed during the interval
+     */
+    String record(final ParserStats stats, final long elapsedMillis) {
+        final long[] totals = { stats.getFiles(), stats.getRows(), stats.getBytes(), stats.getSkippedLines() };
+        long[] last = previous.put(stats, totals);
+        if (last == null) {
+            last = new long[totals.length];
+        }
+        final long[] delta = new long[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            // counters may have been reset through JMX
+            delta[i] = totals[i] >= last[i] ? totals[i] - last[i] : totals[i];
+        }
+
+        final LatencyHistogram[] interval = stats.nextInterval();
+        if (delta[0] == 0) {
+            return null;
+        }
+        final LatencyHistogram fileLatency = interval[0];
+        final LatencyHistogram rowCost = interval[1];
+
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append(stats.getName().replace(',', ' '));
+        sb.append(" intervalSeconds=").append(elapsedMillis / 1000);
+        sb.append(" files=").append(delta[0]);
+        sb.append(" rows=").append(delta[1]);
+        sb.append(" bytes=").append(delta[2]);
+        sb.append(" skippedLines=").append(delta[3]);
+        sb.append(" inFlightFiles=").append(stats.getInFlightFiles());
+        sb.append(" bytesPerSecond=").append(delta[2] * 1000 / elapsedMillis);
+        sb.append(" rowsPerSecond=").append(delta[1] * 1000 / elapsedMillis);
+        sb.append(" fileMsP50=").append(fileLatency.getValueAtPercentile(50) / 1000);
+        sb.append(" fileMsP90=").append(fileLatency.getValueAtPercentile(90) / 1000);
+        sb.append(" fileMsP99=").append(fileLatency.getValueAtPercentile(99) / 1000);
+        sb.append(" fileMsMax=").append(fileLatency.getMax() / 1000);
+        sb.append(" rowNsP50=").append(rowCost.getValueAtPercentile(50));
+        sb.append(" rowNsP99=").append(rowCost.getValueAtPercentile(99));
+        sb.append(" slowestStage=").append(stats.getSlowestStage());
+        return sb.toString();
+    }
+
+}
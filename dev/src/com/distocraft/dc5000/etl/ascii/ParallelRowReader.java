@@ -0,0 +1,329 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.distocraft.dc5000.common.StaticProperties;
+
+/**
+ * Reads the data rows of a large file in parallel. <br>
+ * <br>
+ * The data part of the file is divided into chunks of fixed size. Every chunk is read and its rows are split into columns by a task of a
+ * ForkJoinPool shared by all parsers of the JVM. A row belongs to the chunk its first byte is in, so a task skips the end of the row started
+ * in the previous chunk and reads its last row past the end of the chunk. The parsed chunks are returned to the parser thread in the order
+ * of the file or in the order they are completed. <br>
+ * <br>
+ * The chunks parsed, waiting or held by the parser are limited by a memory budget in bytes of the file, at least one chunk and at most two
+ * per pool thread. A chunk keeps the split rows and their offsets only, the original line of a row is read again from the file with
+ * {@link #readRow(long)} when it is needed for a skipped row. <br>
+ * <br>
+ * The pool is created on first use and lives as long as the JVM, it is not shut down with a parser. Its number of threads is read from
+ * StaticProperties ASCIIParser.parallelThreads, by default the number of processors. The threads are daemon threads of the ForkJoinPool and
+ * exit after they have been idle for a while, so the pool costs nothing between large files.
+ *
+ */
+final class ParallelRowReader implements Diagnostics.RowSource {
+
+    private static ForkJoinPool pool;
+
+    private final FileChannel channel;
+
+    private final long dataStart;
+
+    private final long fileSize;
+
+    private final int chunkSize;
+
+    private final int chunkCount;
+
+    private final Delimiter rowDelimiter;
+
+    private final Delimiter colDelimiter;
+
+    private final Charset charset;
+
+    private final int bufferSize;
+
+    private final boolean ordered;
+
+    private final int maxInFlight;
+
+    private final Deque<Future<Chunk>> inFlight = new ArrayDeque<Future<Chunk>>();
+
+    private final CompletionService<Chunk> completion;
+
+    private int submitted;
+
+    /**
+     * @param channel
+     *            channel of the sourcefile, read with positional reads only
+     * @param dataStart
+     *            position of the first data row in the file
+     * @param chunkSize
+     *            size of a chunk in bytes
+     * @param memoryBudget
+     *            bytes of the file in chunks that are parsed, waiting or held by the parser at the same time
+     * @param ordered
+     *            true if the chunks are returned in the order of the file
+     */
+    ParallelRowReader(final FileChannel channel, final long dataStart, final Delimiter rowDelimiter, final Delimiter colDelimiter,
+            final Charset charset, final int chunkSize, final long memoryBudget, final int bufferSize, final boolean ordered)
+            throws IOException {
+        this.channel = channel;
+        this.dataStart = dataStart;
+        this.fileSize = channel.size();
+        this.rowDelimiter = rowDelimiter;
+        this.colDelimiter = colDelimiter;
+        this.charset = charset;
+        this.bufferSize = Math.max(bufferSize, ByteRowScanner.MIN_READ_BUFFER_SIZE);
+        this.ordered = ordered;
+
+        final byte[] delimiter = rowDelimiter.getLiteral().getBytes(charset);
+        this.chunkSize = Math.max(chunkSize, delimiter.length + 1);
+        this.chunkCount = (int) Math.max((fileSize - dataStart + this.chunkSize - 1) / this.chunkSize, 0);
+
+        final ForkJoinPool p = getPool();
+        // the chunk held by the parser is part of the budget
+        final long chunks = memoryBudget / this.chunkSize - 1;
+        this.maxInFlight = (int) Math.max(Math.min(chunks, p.getParallelism() * 2L), 1);
+        this.completion = ordered ? null : new ExecutorCompletionService<Chunk>(p);
+    }
+
+    /**
+     * Returns true if the rows of a file can be found starting from any position of the file. The row delimiter must be found from the bytes
+     * and its beginning must not be equal to its end, like in "||", which would make the position of the rows ambiguous.
+     */
+    static boolean canSplit(final Delimiter rowDelimiter, final int rowDelimLength, final Charset charset) {
+        if (rowDelimiter == null || !rowDelimiter.isLiteral() || !ByteRowScanner.isAsciiCompatible(charset)) {
+            return false;
+        }
+        final byte[] delimiter = rowDelimiter.getLiteral().getBytes(charset);
+        if (delimiter.length == 0 || (rowDelimLength >= 0 && rowDelimLength != delimiter.length)) {
+            return false;
+        }
+        for (int k = 1; k < delimiter.length; k++) {
+            boolean overlaps = true;
+            for (int i = 0; i < k && overlaps; i++) {
+                overlaps = delimiter[i] == delimiter[delimiter.length - k + i];
+            }
+            if (overlaps) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            try {
+                threads = Integer.parseInt(StaticProperties.getProperty("ASCIIParser.parallelThreads", Integer.toString(threads)).trim());
+            } catch (final Exception e) {
+                // default is used
+            }
+            pool = new ForkJoinPool(Math.max(threads, 1));
+        }
+        return pool;
+    }
+
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return number of chunks that are parsed or waiting at most
+     */
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Reads the row at a position of the file again.
+     *
+     * @param offset
+     *            position of the row returned by {@link Chunk#getOffset(int)}
+     * @return the row or null if the position is at the end of the file
+     */
+    @Override
+    public String readRow(final long offset) throws IOException {
+        final ByteRowScanner scanner = new ByteRowScanner(channel, offset, rowDelimiter, charset, bufferSize);
+        try {
+            return scanner.nextRow();
+        } finally {
+            scanner.close();
+        }
+    }
+
+    /**
+     * Returns the next parsed chunk.
+     *
+     * @return chunk or null if all chunks are returned
+     * @throws IOException
+     *             if reading of the chunk failed
+     */
+    Chunk next() throws IOException {
+        while (submitted < chunkCount && inFlight.size() < maxInFlight) {
+            final ChunkTask task = new ChunkTask(submitted++);
+            inFlight.add(ordered ? getPool().submit(task) : completion.submit(task));
+        }
+
+        try {
+            if (ordered) {
+                final Future<Chunk> future = inFlight.poll();
+                return future == null ? null : future.get();
+            }
+            if (inFlight.isEmpty()) {
+                return null;
+            }
+            final Future<Chunk> future = completion.take();
+            inFlight.remove(future);
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for chunk", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Parsing of chunk failed", e.getCause());
+        }
+    }
+
+    /**
+     * Cancels the chunks that are not returned yet.
+     */
+    void close() {
+        for (Future<Chunk> future : inFlight) {
+            future.cancel(false);
+        }
+        inFlight.clear();
+        submitted = chunkCount;
+    }
+
+    /**
+     * Rows of one chunk. An empty row is returned as null.
+     */
+    static final class Chunk {
+
+        private final int index;
+
+        private final List<String[]> rows = new ArrayList<String[]>();
+
+        private long[] offsets = new long[64];
+
+        private long scanNanos;
+
+        private long splitNanos;
+
+        Chunk(final int index) {
+            this.index = index;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        String[] getRow(final int i) {
+            return rows.get(i);
+        }
+
+        /**
+         * @return position of the row in the file in bytes
+         */
+        long getOffset(final int i) {
+            return offsets[i];
+        }
+
+        private void add(final String[] row, final long offset) {
+            final int i = rows.size();
+            if (i == offsets.length) {
+                offsets = Arrays.copyOf(offsets, i * 2);
+            }
+            offsets[i] = offset;
+            rows.add(row);
+        }
+
+        /**
+         * @return time spent finding the rows of the chunk, estimated from a sample of the rows
+         */
+        long getScanNanos() {
+            return scanNanos;
+        }
+
+        /**
+         * @return time spent splitting the rows of the chunk, estimated from a sample of the rows
+         */
+        long getSplitNanos() {
+            return splitNanos;
+        }
+    }
+
+    private final class ChunkTask implements Callable<Chunk> {
+
+        private final int index;
+
+        ChunkTask(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+
+            final Chunk chunk = new Chunk(index);
+            final long from = dataStart + (long) index * chunkSize;
+            final long limit = index == chunkCount - 1 ? Long.MAX_VALUE : from + chunkSize;
+            final int delimiterLength = rowDelimiter.getLiteral().getBytes(charset).length;
+
+            final ByteRowScanner scanner = new ByteRowScanner(channel, index == 0 ? from : from - delimiterLength, rowDelimiter, charset,
+                    bufferSize);
+            try {
+                if (index > 0) {
+                    // rest of the row started in the previous chunk
+                    scanner.nextRow();
+                }
+                final ParserStats.RowSampler sampler = new ParserStats.RowSampler();
+                while (scanner.position() < limit) {
+                    final long offset = scanner.position();
+                    final boolean timed = sampler.timeRow();
+                    final long start = timed ? System.nanoTime() : 0;
+                    final String line = scanner.nextRow();
+                    final long scanned = timed ? System.nanoTime() : 0;
+                    if (timed) {
+                        chunk.scanNanos += (scanned - start) * ParserStats.RowSampler.SAMPLE_ROWS;
+                    }
+                    if (line == null) {
+                        break;
+                    }
+                    if (line.trim().length() > 0) {
+                        chunk.add(colDelimiter.split(line), offset);
+                        if (timed) {
+                            chunk.splitNanos += (System.nanoTime() - scanned) * ParserStats.RowSampler.SAMPLE_ROWS;
+                        }
+                    } else {
+                        chunk.add(null, offset);
+                    }
+                }
+            } finally {
+                scanner.close();
+            }
+            return chunk;
+        }
+    }
+
+}
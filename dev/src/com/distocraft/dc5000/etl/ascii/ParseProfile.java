@@ -0,0 +1,475 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.distocraft.dc5000.etl.parser.SourceFile;
+
+/**
+ * Parsed ASCIIParser configuration of one interface. <br>
+ * <br>
+ * A profile contains the values of the sourcefile properties already converted to modes, delimiters and compiled patterns. Profiles are
+ * immutable and cached for the whole JVM, keyed by techpack, set type, set name and the raw property values, so files of the same
+ * interface are parsed without parsing the configuration again. Any change in the properties creates a new profile.
+ *
+ */
+final class ParseProfile {
+
+    static final int MAX_CACHED_PROFILES = 1000;
+
+    private static final ConcurrentMap<Key, ParseProfile> CACHE = new ConcurrentHashMap<Key, ParseProfile>();
+
+    private static final String[][] PROPERTIES = { { "column_delimiter", "\t" }, { "row_delimiter", "\n" },
+            { "tag_id_mode", "" + ASCIIParser.TAGID_FROM_FILENAME }, { "tag_id", "(.+)" },
+            { "data_id_mode", "" + ASCIIParser.DATAID_FROM_COLUMNS }, { "header_row", "" }, { "column_widths", "" },
+            { "datatime_mode", "" + ASCIIParser.DATATIME_SKIPPED }, { "datatime_column", "" }, { "buffer_size", "10000" },
+            { "row_delimiter_size", "-1" }, { "input_mode", "" + ASCIIParser.INPUT_FROM_STREAM }, { "fileNameFormat", "" },
+            { "writeForEach", "" }, { "verticalTraversing", "false" }, { "header_skip", "1" }, { "header_in_row", "0" },
+            { "row_width_mode", "" + ASCIIParser.ROW_WIDTH_DEFAULT }, { "parallel_threshold", "0" },
+            { "parallel_chunk_size", "16777216" }, { "parallel_ordered", "true" }, { "parallel_memory", "67108864" },
+            { "reject_dir", "" }, { "gzip_background", "false" },
+            { "value_dictionary_size", "0" }, { "vertical_spill_threshold", "100000" },
+            { "record_boundary", "" } };
+
+    private final String colDelim;
+
+    private final String rowDelim;
+
+    private final Delimiter colDelimiter;
+
+    private final Delimiter rowDelimiter;
+
+    private final int tagIDMode;
+
+    private final String tagID;
+
+    private final Pattern tagPattern;
+
+    private final int dataIDMode;
+
+    private final String headerRow;
+
+    private final List<String> configuredHeader;
+
+    private final ColumnWidths columnWidths;
+
+    private final int datatimeMode;
+
+    private final String datatimeColumn;
+
+    private final Pattern timePattern;
+
+    private final int bufferSize;
+
+    private final int rowDelimLength;
+
+    private final int inputMode;
+
+    private final String fileNameFormat;
+
+    private final Pattern fileNamePattern;
+
+    private final Set<String> writeForEachColumns;
+
+    private final boolean verticalTraverse;
+
+    private final int headerSkip;
+
+    private final int headerInRow;
+
+    private final int rowWidthMode;
+
+    private final long parallelThreshold;
+
+    private final int parallelChunkSize;
+
+    private final boolean parallelOrdered;
+
+    private final long parallelMemory;
+
+    private final File rejectDir;
+
+    private final boolean gzipBackground;
+
+    private final int valueDictionarySize;
+
+    private final int verticalSpillThreshold;
+
+    private final Pattern recordBoundary;
+
+    private ParseProfile(final String[] values, final Logger log) {
+
+        int i = 0;
+
+        String delim = values[i++];
+        colDelim = delim.length() == 0 ? "\t" : delim;
+        log.finest("col_delim: " + colDelim);
+
+        delim = values[i++];
+        rowDelim = delim.length() == 0 ? "\n" : delim;
+        log.finest("row_delim: " + rowDelim);
+
+        colDelimiter = Delimiter.compile(colDelim);
+        rowDelimiter = Delimiter.compile(rowDelim);
+
+        tagIDMode = Integer.parseInt(values[i++]);
+        log.finest("tag_id_mode: " + tagIDMode);
+
+        tagID = values[i++];
+        log.finest("tag_id: " + tagID);
+        tagPattern = tagIDMode == ASCIIParser.TAGID_FROM_FILENAME ? compile(tagID, "tag_id", log) : null;
+
+        dataIDMode = Integer.parseInt(values[i++]);
+        log.finest("data_id_mode: " + dataIDMode);
+
+        headerRow = values[i++];
+        log.finest("header_row: " + headerRow);
+        if (dataIDMode == ASCIIParser.DATAID_FROM_CONFIG) {
+            configuredHeader = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(colDelimiter.split(headerRow))));
+        } else {
+            configuredHeader = null;
+        }
+
+        final String widths = values[i++].trim();
+        log.finest("column_widths: " + widths);
+        columnWidths = widths.length() > 0 ? ColumnWidths.parse(widths) : null;
+
+        datatimeMode = Integer.parseInt(values[i++]);
+        log.finest("datatime_mode: " + datatimeMode);
+
+        datatimeColumn = values[i++];
+        log.finest("datatime_column: " + datatimeColumn);
+        timePattern = datatimeMode == ASCIIParser.DATATIME_FROM_FILENAME ? compile(datatimeColumn, "datatime_column", log) : null;
+
+        bufferSize = Integer.parseInt(values[i++]);
+        log.finest("buffer_size: " + bufferSize);
+
+        rowDelimLength = Integer.parseInt(values[i++]);
+        log.finest("row_delimiter_size: " + rowDelimLength);
+
+        inputMode = Integer.parseInt(values[i++]);
+        log.finest("input_mode: " + inputMode);
+
+        fileNameFormat = values[i++];
+        log.finest("The pattern to check eNodeBName is " + fileNameFormat);
+        fileNamePattern = fileNameFormat.length() > 0 ? compile(fileNameFormat, "fileNameFormat", log) : null;
+
+        final String writeForEach = values[i++];
+        log.finest("The writeForEach is " + writeForEach);
+        if (writeForEach.length() > 0) {
+            writeForEachColumns = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(writeForEach.split(","))));
+        } else {
+            writeForEachColumns = null;
+        }
+
+        verticalTraverse = "true".equalsIgnoreCase(values[i++]);
+        log.finest("isVerticalTraverse: " + verticalTraverse);
+
+        headerSkip = Integer.parseInt(values[i++]);
+        log.finest("header_skip: " + headerSkip);
+
+        headerInRow = Integer.parseInt(values[i++]);
+        log.finest("header_in_row: " + headerInRow);
+
+        rowWidthMode = Integer.parseInt(values[i++]);
+        log.finest("row_width_mode: " + rowWidthMode);
+
+        parallelThreshold = Long.parseLong(values[i++]);
+        log.finest("parallel_threshold: " + parallelThreshold);
+
+        parallelChunkSize = Integer.parseInt(values[i++]);
+        log.finest("parallel_chunk_size: " + parallelChunkSize);
+
+        parallelOrdered = !"false".equalsIgnoreCase(values[i++]);
+        log.finest("parallel_ordered: " + parallelOrdered);
+
+        parallelMemory = Long.parseLong(values[i++].trim());
+        log.finest("parallel_memory: " + parallelMemory);
+
+        final String reject = values[i++].trim();
+        rejectDir = reject.length() > 0 ? new File(reject) : null;
+        log.finest("reject_dir: " + reject);
+
+        gzipBackground = "true".equalsIgnoreCase(values[i++].trim());
+        log.finest("gzip_background: " + gzipBackground);
+
+        valueDictionarySize = Integer.parseInt(values[i++].trim());
+        log.finest("value_dictionary_size: " + valueDictionarySize);
+
+        verticalSpillThreshold = Integer.parseInt(values[i++].trim());
+        log.finest("vertical_spill_threshold: " + verticalSpillThreshold);
+
+        final String boundary = values[i++];
+        log.finest("record_boundary: " + boundary);
+        recordBoundary = boundary.length() > 0 ? compile(boundary, "record_boundary", log) : null;
+    }
+
+    /**
+     * Returns the profile for the properties of a sourcefile. The profile is created and cached if this configuration is parsed for the first
+     * time.
+     *
+     * @throws NumberFormatException
+     *             if a numeric property is invalid
+     */
+    static ParseProfile getProfile(final SourceFile sf, final String techPack, final String setType, final String setName, final Logger log) {
+
+        final String[] values = new String[PROPERTIES.length];
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            values[i] = sf.getProperty(PROPERTIES[i][0], PROPERTIES[i][1]);
+        }
+
+        final Key key = new Key(techPack, setType, setName, values);
+        ParseProfile profile = CACHE.get(key);
+        if (profile == null) {
+            profile = new ParseProfile(values, log);
+            if (CACHE.size() >= MAX_CACHED_PROFILES) {
+                CACHE.clear();
+            }
+            final ParseProfile cached = CACHE.putIfAbsent(key, profile);
+            if (cached != null) {
+                profile = cached;
+            }
+            log.fine("Created parse profile for " + techPack + "/" + setType + "/" + setName);
+        }
+        return profile;
+    }
+
+    /**
+     * Removes all cached profiles.
+     */
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    static int cacheSize() {
+        return CACHE.size();
+    }
+
+    private static Pattern compile(final String pattern, final String property, final Logger log) {
+        try {
+            return Pattern.compile(pattern);
+        } catch (final PatternSyntaxException e) {
+            log.log(Level.WARNING, "Invalid pattern " + pattern + " for " + property, e);
+            return null;
+        }
+    }
+
+    String getColDelim() {
+        return colDelim;
+    }
+
+    String getRowDelim() {
+        return rowDelim;
+    }
+
+    Delimiter getColDelimiter() {
+        return colDelimiter;
+    }
+
+    Delimiter getRowDelimiter() {
+        return rowDelimiter;
+    }
+
+    int getTagIDMode() {
+        return tagIDMode;
+    }
+
+    String getTagID() {
+        return tagID;
+    }
+
+    /**
+     * @return compiled tag_id if TAGID is parsed from filename, otherwise or if tag_id is not a valid pattern null
+     */
+    Pattern getTagPattern() {
+        return tagPattern;
+    }
+
+    int getDataIDMode() {
+        return dataIDMode;
+    }
+
+    /**
+     * @return columns of header_row if data_id_mode is 1, otherwise null
+     */
+    List<String> getConfiguredHeader() {
+        return configuredHeader;
+    }
+
+    /**
+     * @return layout of fixed width files or null if columns are separated by column_delimiter
+     */
+    ColumnWidths getColumnWidths() {
+        return columnWidths;
+    }
+
+    int getDatatimeMode() {
+        return datatimeMode;
+    }
+
+    String getDatatimeColumn() {
+        return datatimeColumn;
+    }
+
+    /**
+     * @return compiled datatime_column if DATATIME is parsed from filename, otherwise or if datatime_column is not a valid pattern null
+     */
+    Pattern getTimePattern() {
+        return timePattern;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getRowDelimLength() {
+        return rowDelimLength;
+    }
+
+    int getInputMode() {
+        return inputMode;
+    }
+
+    String getFileNameFormat() {
+        return fileNameFormat;
+    }
+
+    /**
+     * @return compiled fileNameFormat or null if it is not defined or it is not a valid pattern
+     */
+    Pattern getFileNamePattern() {
+        return fileNamePattern;
+    }
+
+    /**
+     * @return unmodifiable set of writeForEach columns or null if writeForEach is not defined
+     */
+    Set<String> getWriteForEachColumns() {
+        return writeForEachColumns;
+    }
+
+    boolean isVerticalTraverse() {
+        return verticalTraverse;
+    }
+
+    int getHeaderSkip() {
+        return headerSkip;
+    }
+
+    int getHeaderInRow() {
+        return headerInRow;
+    }
+
+    int getRowWidthMode() {
+        return rowWidthMode;
+    }
+
+    long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    int getParallelChunkSize() {
+        return parallelChunkSize;
+    }
+
+    boolean isParallelOrdered() {
+        return parallelOrdered;
+    }
+
+    /**
+     * @return bytes of the file in chunks parsed in parallel at the same time
+     */
+    long getParallelMemory() {
+        return parallelMemory;
+    }
+
+    /**
+     * @return directory of the files of rejected rows or null if rejected rows are not written
+     */
+    File getRejectDir() {
+        return rejectDir;
+    }
+
+    boolean isGzipBackground() {
+        return gzipBackground;
+    }
+
+    /**
+     * @return size of the value dictionary, 0 if values are not looked up from a dictionary
+     */
+    int getValueDictionarySize() {
+        return valueDictionarySize;
+    }
+
+    /**
+     * @return number of writeForEach values of a column kept in memory, 0 if all values are kept in memory
+     */
+    int getVerticalSpillThreshold() {
+        return verticalSpillThreshold;
+    }
+
+    /**
+     * @return compiled record_boundary or null if vertical traverse files contain one record
+     */
+    Pattern getRecordBoundary() {
+        return recordBoundary;
+    }
+
+    /**
+     * Cache key of a profile.
+     */
+    private static final class Key {
+
+        private final String techPack;
+
+        private final String setType;
+
+        private final String setName;
+
+        private final String[] values;
+
+        private final int hash;
+
+        Key(final String techPack, final String setType, final String setName, final String[] values) {
+            this.techPack = techPack;
+            this.setType = setType;
+            this.setName = setName;
+            this.values = values;
+            this.hash = Arrays.hashCode(new Object[] { techPack, setType, setName }) * 31 + Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash && equal(techPack, other.techPack) && equal(setType, other.setType) && equal(setName, other.setName)
+                    && Arrays.equals(values, other.values);
+        }
+
+        private static boolean equal(final String a, final String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+}
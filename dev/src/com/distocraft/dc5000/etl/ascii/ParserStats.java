@@ -0,0 +1,550 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Counters and per-stage timers of the ASCIIParser workers of one techpack, set and worker, registered as an MBean named
+ * com.distocraft.dc5000.etl.ascii:type=ASCIIParser,techPack=...,set=...[,worker=...]. <br>
+ * <br>
+ * Every parser instance collects its times into a {@link Recorder} without any synchronization and publishes them to the shared LongAdder
+ * counters every {@link RowWriter#PUBLISH_ROWS} written rows and at the end of a file, so the values follow a large file while it is
+ * parsed. The stages of rows are timed for a sample of the rows only, see {@link RowSampler}. The parse time of every file and its cost
+ * per row are recorded into histograms, which are also reported periodically by {@link MetricsReporter}. Skipped lines are also counted
+ * per {@link RejectReason}.
+ *
+ */
+final class ParserStats implements ParserStatsMBean {
+
+    /**
+     * Stages of parsing a file.
+     */
+    enum Stage {
+        /** Opening the sourcefile and the measurement file, reading the header */
+        OPEN,
+        /** Finding the rows from the input */
+        SCAN,
+        /** Splitting the rows into columns */
+        TOKENIZE,
+        /** Binding the columns to keys and addData */
+        BIND,
+        /** saveData */
+        SAVE,
+        /** Handing the nodes over to FLS */
+        FLS,
+        /** Closing the measurement file */
+        CLOSE
+    }
+
+    static final String DOMAIN = "com.distocraft.dc5000.etl.ascii";
+
+    private static final Logger LOG = Logger.getLogger("etl.parser.ASCII.ParserStats");
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private static final RejectReason[] REASONS = RejectReason.values();
+
+    private static final ConcurrentMap<String, ParserStats> INSTANCES = new ConcurrentHashMap<String, ParserStats>();
+
+    private final String name;
+
+    private final LongAdder[] stageNanos = new LongAdder[STAGES.length];
+
+    private final LongAdder[] stageCounts = new LongAdder[STAGES.length];
+
+    private final LongAdder files = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder[] rejected = new LongAdder[REASONS.length];
+
+    private final LongAdder dictionaryHits = new LongAdder();
+
+    private final LongAdder dictionaryMisses = new LongAdder();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    /**
+     * Parse time of a file in microseconds.
+     */
+    private volatile LatencyHistogram fileLatency = new LatencyHistogram();
+
+    /**
+     * Parse time of a file divided by its rows in nanoseconds.
+     */
+    private volatile LatencyHistogram rowCost = new LatencyHistogram();
+
+    private final AtomicReference<LatencyHistogram> intervalFileLatency = new AtomicReference<LatencyHistogram>(new LatencyHistogram());
+
+    private final AtomicReference<LatencyHistogram> intervalRowCost = new AtomicReference<LatencyHistogram>(new LatencyHistogram());
+
+    ParserStats(final String name) {
+        this.name = name;
+        for (int i = 0; i < STAGES.length; i++) {
+            stageNanos[i] = new LongAdder();
+            stageCounts[i] = new LongAdder();
+        }
+        for (int i = 0; i < REASONS.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the statistics of a parser set, created and registered to the platform MBean server on first use.
+     */
+    static ParserStats getInstance(final String techPack, final String setName, final String workerName) {
+        final String name = "type=ASCIIParser,techPack=" + quote(techPack) + ",set=" + quote(setName)
+                + (workerName == null || workerName.length() == 0 ? "" : ",worker=" + quote(workerName));
+        ParserStats stats = INSTANCES.get(name);
+        if (stats == null) {
+            final ParserStats created = new ParserStats(name);
+            stats = INSTANCES.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+                created.register();
+                MetricsReporter.start();
+            }
+        }
+        return stats;
+    }
+
+    static Collection<ParserStats> getInstances() {
+        return INSTANCES.values();
+    }
+
+    private static String quote(final String value) {
+        return value == null ? "" : value.replaceAll("[,=:\"*?\\s]", "_");
+    }
+
+    private void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(DOMAIN + ":" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new StandardMBean(this, ParserStatsMBean.class), objectName);
+            }
+        } catch (final Exception e) {
+            LOG.log(Level.FINE, "Registering MBean " + name + " failed", e);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void fileStarted() {
+        inFlight.increment();
+    }
+
+    /**
+     * @param fileRows
+     *            rows written from the file
+     * @param nanos
+     *            time spent parsing the file
+     */
+    void fileFinished(final long fileBytes, final long fileRows, final long nanos) {
+        inFlight.decrement();
+        files.increment();
+        bytes.add(fileBytes);
+
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        fileLatency.record(micros);
+        intervalFileLatency.get().record(micros);
+        if (fileRows > 0) {
+            rowCost.record(nanos / fileRows);
+            intervalRowCost.get().record(nanos / fileRows);
+        }
+    }
+
+    /**
+     * Starts new histograms for the next reporting interval.
+     *
+     * @return file latency and row cost histograms of the interval that ended
+     */
+    LatencyHistogram[] nextInterval() {
+        return new LatencyHistogram[] { intervalFileLatency.getAndSet(new LatencyHistogram()),
+                intervalRowCost.getAndSet(new LatencyHistogram()) };
+    }
+
+    long getStageNanos(final Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    long getStageCount(final Stage stage) {
+        return stageCounts[stage.ordinal()].sum();
+    }
+
+    long getSkippedLines(final RejectReason reason) {
+        return rejected[reason.ordinal()].sum();
+    }
+
+    private long millis(final Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(getStageNanos(stage));
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getSkippedLines() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long getInFlightFiles() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getOpenTime() {
+        return millis(Stage.OPEN);
+    }
+
+    @Override
+    public long getScanTime() {
+        return millis(Stage.SCAN);
+    }
+
+    @Override
+    public long getTokenizeTime() {
+        return millis(Stage.TOKENIZE);
+    }
+
+    @Override
+    public long getBindTime() {
+        return millis(Stage.BIND);
+    }
+
+    @Override
+    public long getSaveTime() {
+        return millis(Stage.SAVE);
+    }
+
+    @Override
+    public long getFlsTime() {
+        return millis(Stage.FLS);
+    }
+
+    @Override
+    public long getFlsQueueLength() {
+        final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+        return dispatcher == null ? 0 : dispatcher.getQueueLength();
+    }
+
+    @Override
+    public long getFlsSent() {
+        final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+        return dispatcher == null ? 0 : dispatcher.getSent();
+    }
+
+    @Override
+    public long getFlsCoalesced() {
+        final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+        return dispatcher == null ? 0 : dispatcher.getCoalesced();
+    }
+
+    @Override
+    public long getFlsDropped() {
+        final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+        return dispatcher == null ? 0 : dispatcher.getDropped();
+    }
+
+    @Override
+    public long getFlsRetried() {
+        final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+        return dispatcher == null ? 0 : dispatcher.getRetried();
+    }
+
+    @Override
+    public long getFlsFailed() {
+        final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+        return dispatcher == null ? 0 : dispatcher.getFailed();
+    }
+
+    @Override
+    public long getCloseTime() {
+        return millis(Stage.CLOSE);
+    }
+
+    @Override
+    public long getFileLatencyP50() {
+        return fileLatency.getValueAtPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getFileLatencyP99() {
+        return fileLatency.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getFileLatencyMax() {
+        return fileLatency.getMax() / 1000;
+    }
+
+    @Override
+    public long getRowCostP50() {
+        return rowCost.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getRowCostP99() {
+        return rowCost.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getDictionaryHits() {
+        return dictionaryHits.sum();
+    }
+
+    @Override
+    public long getDictionaryMisses() {
+        return dictionaryMisses.sum();
+    }
+
+    @Override
+    public long getDictionaryHitRate() {
+        final long hits = getDictionaryHits();
+        final long lookups = hits + getDictionaryMisses();
+        return lookups == 0 ? 0 : hits * 100 / lookups;
+    }
+
+    @Override
+    public String getSlowestStage() {
+        Stage slowest = null;
+        long max = 0;
+        for (Stage stage : STAGES) {
+            final long nanos = getStageNanos(stage);
+            if (nanos > max) {
+                max = nanos;
+                slowest = stage;
+            }
+        }
+        return slowest == null ? "" : slowest.name();
+    }
+
+    @Override
+    public String getStageSummary() {
+        final StringBuilder sb = new StringBuilder();
+        for (Stage stage : STAGES) {
+            final long nanos = getStageNanos(stage);
+            final long count = getStageCount(stage);
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(stage.name()).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms/").append(count);
+            if (count > 0) {
+                sb.append(" (").append(nanos / count).append(" ns)");
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getRejectSummary() {
+        final StringBuilder sb = new StringBuilder();
+        for (RejectReason reason : REASONS) {
+            final long count = getSkippedLines(reason);
+            if (count > 0) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(reason.name()).append(' ').append(count);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            stageNanos[i].reset();
+            stageCounts[i].reset();
+        }
+        files.reset();
+        rows.reset();
+        bytes.reset();
+        skipped.reset();
+        for (LongAdder count : rejected) {
+            count.reset();
+        }
+        dictionaryHits.reset();
+        dictionaryMisses.reset();
+        fileLatency = new LatencyHistogram();
+        rowCost = new LatencyHistogram();
+    }
+
+    /**
+     * Collects the times of one parser thread. Not thread safe.
+     */
+    static final class Recorder {
+
+        private final ParserStats stats;
+
+        private final long[] nanos = new long[STAGES.length];
+
+        private final long[] counts = new long[STAGES.length];
+
+        private long rows;
+
+        private final long[] skipped = new long[REASONS.length];
+
+        private boolean anySkipped;
+
+        private long fileStart;
+
+        private long fileRows;
+
+        Recorder(final ParserStats stats) {
+            this.stats = stats;
+        }
+
+        ParserStats getStats() {
+            return stats;
+        }
+
+        /**
+         * Adds one execution of a stage that started at the given System.nanoTime().
+         *
+         * @return current System.nanoTime(), the start time of the next stage
+         */
+        long since(final Stage stage, final long start) {
+            final long now = System.nanoTime();
+            nanos[stage.ordinal()] += now - start;
+            counts[stage.ordinal()]++;
+            return now;
+        }
+
+        /**
+         * Adds one execution of a stage for a row. The time is taken only if the row is timed, then it is counted for all rows of the sample.
+         *
+         * @param timed
+         *            result of {@link RowSampler#timeRow()} for the row
+         * @return current System.nanoTime() if the row is timed, otherwise 0
+         */
+        long sample(final Stage stage, final long start, final boolean timed) {
+            counts[stage.ordinal()]++;
+            if (!timed) {
+                return 0;
+            }
+            final long now = System.nanoTime();
+            nanos[stage.ordinal()] += (now - start) * RowSampler.SAMPLE_ROWS;
+            return now;
+        }
+
+        void add(final Stage stage, final long count, final long time) {
+            nanos[stage.ordinal()] += time;
+            counts[stage.ordinal()] += count;
+        }
+
+        void fileStarted() {
+            fileStart = System.nanoTime();
+            fileRows = 0;
+            stats.fileStarted();
+        }
+
+        /**
+         * Publishes the collected values and the parse time of the file.
+         */
+        void fileFinished(final long fileBytes) {
+            publish();
+            stats.fileFinished(fileBytes, fileRows, System.nanoTime() - fileStart);
+        }
+
+        /**
+         * Adds the lookups of a value dictionary during one file.
+         */
+        void dictionaryLookups(final long hits, final long misses) {
+            stats.dictionaryHits.add(hits);
+            stats.dictionaryMisses.add(misses);
+        }
+
+        void rowWritten() {
+            rows++;
+            fileRows++;
+        }
+
+        void lineSkipped(final RejectReason reason) {
+            skipped[reason.ordinal()]++;
+            anySkipped = true;
+        }
+
+        /**
+         * Adds the collected values to the shared counters and clears them.
+         */
+        void publish() {
+            for (int i = 0; i < nanos.length; i++) {
+                if (counts[i] != 0) {
+                    stats.stageNanos[i].add(nanos[i]);
+                    stats.stageCounts[i].add(counts[i]);
+                    nanos[i] = 0;
+                    counts[i] = 0;
+                }
+            }
+            if (rows != 0) {
+                stats.rows.add(rows);
+                rows = 0;
+            }
+            if (anySkipped) {
+                for (int i = 0; i < skipped.length; i++) {
+                    if (skipped[i] != 0) {
+                        stats.skipped.add(skipped[i]);
+                        stats.rejected[i].add(skipped[i]);
+                        skipped[i] = 0;
+                    }
+                }
+                anySkipped = false;
+            }
+        }
+    }
+
+    /**
+     * Selects the rows whose stages are timed. System.nanoTime() costs about as much as scanning a short row, so only one row of
+     * {@link #SAMPLE_ROWS} is timed and its time is counted for all rows of the sample. The first row is always timed, and a parser keeps
+     * its samplers over its files, so files of fewer rows than the sample are timed too. Not thread safe, every thread has its own.
+     */
+    static final class RowSampler {
+
+        static final int SAMPLE_ROWS = 32;
+
+        private int rows = SAMPLE_ROWS - 1;
+
+        /**
+         * @return true if the next row is timed
+         */
+        boolean timeRow() {
+            if (++rows < SAMPLE_ROWS) {
+                return false;
+            }
+            rows = 0;
+            return true;
+        }
+    }
+
+}
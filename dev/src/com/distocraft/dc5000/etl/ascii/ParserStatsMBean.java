@@ -0,0 +1,105 @@
+package com.distocraft.dc5000.etl.ascii;
+
+/**
+ * Management interface of {@link ParserStats}. Times are total milliseconds spent in the stage by all threads of the parser set.
+ *
+ */
+public interface ParserStatsMBean {
+
+    long getFiles();
+
+    long getRows();
+
+    long getBytes();
+
+    long getSkippedLines();
+
+    long getInFlightFiles();
+
+    long getOpenTime();
+
+    long getScanTime();
+
+    long getTokenizeTime();
+
+    long getBindTime();
+
+    long getSaveTime();
+
+    long getFlsTime();
+
+    /**
+     * @return FLS notifications waiting to be sent. The FLS counters are shared by all parsers of the JVM and are not reset.
+     */
+    long getFlsQueueLength();
+
+    long getFlsSent();
+
+    /**
+     * @return FLS notifications not queued because the same one was already waiting
+     */
+    long getFlsCoalesced();
+
+    /**
+     * @return FLS notifications dropped because the queue was full
+     */
+    long getFlsDropped();
+
+    long getFlsRetried();
+
+    /**
+     * @return FLS notifications given up after all retries failed
+     */
+    long getFlsFailed();
+
+    long getCloseTime();
+
+    /**
+     * @return median parse time of a file in milliseconds
+     */
+    long getFileLatencyP50();
+
+    /**
+     * @return 99th percentile of parse time of a file in milliseconds
+     */
+    long getFileLatencyP99();
+
+    long getFileLatencyMax();
+
+    /**
+     * @return median parse time of a file per row in nanoseconds
+     */
+    long getRowCostP50();
+
+    long getRowCostP99();
+
+    long getDictionaryHits();
+
+    long getDictionaryMisses();
+
+    /**
+     * @return percentage of value dictionary lookups that found the value
+     */
+    long getDictionaryHitRate();
+
+    /**
+     * @return name of the stage with the most time spent
+     */
+    String getSlowestStage();
+
+    /**
+     * @return time, count and average time of every stage
+     */
+    String getStageSummary();
+
+    /**
+     * @return number of skipped lines of every reason that has skipped lines
+     */
+    String getRejectSummary();
+
+    /**
+     * Sets the counters and timers to zero. Files in flight are not reset.
+     */
+    void reset();
+
+}
@@ -0,0 +1,205 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+
+/**
+ * Cursor based row scanner that reads characters from a Reader. <br>
+ * <br>
+ * Characters are read from the underlying reader into one reusable buffer and the row delimiter is searched only from the unconsumed part of
+ * that buffer, so the cost of finding a row is proportional to the length of the row. A literal delimiter is searched character by
+ * character, a regexp delimiter with one reused Matcher. Consumed rows are dropped by moving a cursor instead of copying the rest of the
+ * data. A leading UTF-8 byte order mark is removed from the first row.
+ *
+ */
+class ReaderRowScanner implements RowScanner {
+
+    private static final char UTF8_BOM = '\uFEFF';
+
+    private final Reader reader;
+
+    private final Matcher matcher;
+
+    private final char[] literal;
+
+    private final int delimiterSize;
+
+    private char[] buffer;
+
+    private CharBuffer view;
+
+    /**
+     * Start of the unconsumed data in the buffer.
+     */
+    private int start = 0;
+
+    /**
+     * End of the valid data in the buffer.
+     */
+    private int end = 0;
+
+    private boolean eof = false;
+
+    private boolean finished = false;
+
+    private boolean delimiterSeen = false;
+
+    private boolean bomChecked = false;
+
+    /**
+     * @param reader
+     *            source of the characters
+     * @param delimiter
+     *            row delimiter
+     * @param delimiterSize
+     *            number of characters removed with every delimiter or negative to remove the matched delimiter
+     * @param bufferSize
+     *            number of characters read from the reader at one time
+     */
+    ReaderRowScanner(final Reader reader, final Delimiter delimiter, final int delimiterSize, final int bufferSize) {
+        this.reader = reader;
+        this.delimiterSize = delimiterSize;
+        this.buffer = new char[Math.max(bufferSize, 16)];
+        this.view = CharBuffer.wrap(buffer);
+        if (delimiter.isLiteral()) {
+            this.literal = delimiter.getLiteral().toCharArray();
+            this.matcher = null;
+        } else {
+            this.literal = null;
+            this.matcher = delimiter.getPattern().matcher(view);
+        }
+    }
+
+    /**
+     * @see com.distocraft.dc5000.etl.ascii.RowScanner#nextRow()
+     */
+    @Override
+    public String nextRow() throws IOException {
+
+        if (finished) {
+            return null;
+        }
+
+        int searchFrom = start;
+
+        while (true) {
+
+            if (!bomChecked && end > start) {
+                bomChecked = true;
+                if (buffer[start] == UTF8_BOM) {
+                    start++;
+                    searchFrom = start;
+                }
+            }
+
+            if (literal != null) {
+                final int found = indexOfLiteral(searchFrom);
+                if (found >= 0) {
+                    final int skip = delimiterSize < 0 ? literal.length : delimiterSize;
+                    if (found + skip <= end || eof) {
+                        final String row = new String(buffer, start, found - start);
+                        start = Math.min(found + skip, end);
+                        delimiterSeen = true;
+                        return row;
+                    }
+                    // the characters removed with the delimiter are not read yet, the delimiter is found again after the next read
+                    searchFrom = found;
+                } else {
+                    // delimiter can not start before the last characters already searched
+                    searchFrom = Math.max(start, end - literal.length + 1);
+                }
+            } else if (end > searchFrom) {
+                view.limit(end);
+                matcher.reset(view);
+                int from = searchFrom;
+                while (from < end && matcher.find(from)) {
+                    final int matchStart = matcher.start();
+                    final int matchEnd = matcher.end();
+                    if (matchEnd == matchStart) {
+                        // zero length match does not split rows
+                        from = matchStart + 1;
+                        continue;
+                    }
+                    final int skip = delimiterSize < 0 ? matchEnd - matchStart : delimiterSize;
+                    if ((matcher.hitEnd() || matchStart + skip > end) && !eof) {
+                        // delimiter may continue in the data not read yet
+                        break;
+                    }
+                    final String row = new String(buffer, start, matchStart - start);
+                    start = Math.min(matchStart + skip, end);
+                    delimiterSeen = true;
+                    return row;
+                }
+            }
+
+            if (eof) {
+                finished = true;
+                if (start < end || !delimiterSeen) {
+                    final String row = new String(buffer, start, end - start);
+                    start = end;
+                    return row;
+                }
+                return null;
+            }
+
+            final int shift = start;
+            fill();
+            searchFrom = literal != null ? searchFrom - (shift - start) : start;
+        }
+    }
+
+    private int indexOfLiteral(final int from) {
+        final char first = literal[0];
+        final int last = end - literal.length;
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] == first) {
+                int j = 1;
+                while (j < literal.length && buffer[i + j] == literal[j]) {
+                    j++;
+                }
+                if (j == literal.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads next characters from the reader. Unconsumed characters are moved to the beginning of the buffer and the buffer is grown only if
+     * a single row does not fit in it.
+     */
+    private void fill() throws IOException {
+
+        if (start == end) {
+            start = 0;
+            end = 0;
+        } else if (end == buffer.length) {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            } else {
+                final char[] grown = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, end);
+                buffer = grown;
+                view = CharBuffer.wrap(buffer);
+            }
+        }
+
+        final int count = reader.read(buffer, end, buffer.length - end);
+        if (count == -1) {
+            eof = true;
+        } else {
+            end += count;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Sidecar file of the rejected rows of one sourcefile. <br>
+ * <br>
+ * The file is created on the first rejected row, so sourcefiles without rejected rows leave nothing behind. Every row is written on its own
+ * line as tab separated line number, byte offset of the row in the sourcefile (-1 if the file is read as characters), error code and the
+ * row itself. Line breaks inside the row are written as \r and \n.
+ *
+ */
+final class RejectFile {
+
+    static final String SUFFIX = ".rejected";
+
+    static final String HEADER = "line\toffset\treason\trow";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    private Writer out;
+
+    private long rows;
+
+    /**
+     * @param dir
+     *            directory of the sidecar files
+     * @param filename
+     *            name of the sourcefile
+     */
+    RejectFile(final File dir, final String filename) {
+        this.file = new File(dir, filename + SUFFIX);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of rows written
+     */
+    long getRows() {
+        return rows;
+    }
+
+    void write(final long lineNum, final long offset, final RejectReason reason, final String line) throws IOException {
+        if (out == null) {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 8192);
+            out.write(HEADER);
+            out.write('\n');
+        }
+        out.write(Long.toString(lineNum));
+        out.write('\t');
+        out.write(Long.toString(offset));
+        out.write('\t');
+        out.write(reason.name());
+        out.write('\t');
+        if (line != null) {
+            for (int i = 0; i < line.length(); i++) {
+                final char c = line.charAt(i);
+                if (c == '\n') {
+                    out.write("\\n");
+                } else if (c == '\r') {
+                    out.write("\\r");
+                } else {
+                    out.write(c);
+                }
+            }
+        }
+        out.write('\n');
+        rows++;
+    }
+
+    void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+}
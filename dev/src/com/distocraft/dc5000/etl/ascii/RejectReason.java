@@ -0,0 +1,22 @@
+package com.distocraft.dc5000.etl.ascii;
+
+/**
+ * Error codes of rejected data rows. Rows are classified by the check that failed, so counting and logging a rejected row does not need an
+ * exception.
+ *
+ */
+enum RejectReason {
+
+    /** Row has more columns than the header and row_width_mode does not allow it */
+    WIDER_THAN_HEADER,
+
+    /** Row has less columns than the header and row_width_mode does not allow it */
+    NARROWER_THAN_HEADER,
+
+    /** Row could not be bound to the columns of the file */
+    INVALID_ROW,
+
+    /** Measurement file failed to add or save the row */
+    WRITE_FAILED
+
+}
@@ -0,0 +1,20 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Splits the content of a sourcefile into rows.
+ *
+ */
+interface RowScanner extends Closeable {
+
+    /**
+     * Returns the next row without the delimiter. The data after the last delimiter is returned as the last row. An empty file produces one
+     * empty row.
+     *
+     * @return next row or null if there are no more rows
+     */
+    String nextRow() throws IOException;
+
+}
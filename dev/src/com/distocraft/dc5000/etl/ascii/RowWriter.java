@@ -0,0 +1,140 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * Writes parsed rows to a measurement file. <br>
+ * <br>
+ * Rows are positional value arrays bound to a {@link ColumnPlan}. Every value is handed to the measurement file with addData(key, value),
+ * so it is hashed only once, into the map of the measurement file. The values that are constant for the file (filename, DIRNAME etc.) are
+ * added with one addData(Map) call after the values of the row, so a constant has precedence over a column with the same key. Rows are
+ * written as they are added: the measurement file has no call for several rows, and collecting rows in an own map first would only hash
+ * every value twice, see EmitBenchmark. A failing row is logged and skipped. The time spent in addData and saveData is taken from a sample
+ * of the rows and published every {@link #PUBLISH_ROWS} rows.
+ *
+ */
+final class RowWriter {
+
+    static final int PUBLISH_ROWS = 1024;
+
+    private final MeasurementFile mFile;
+
+    private final ColumnPlan plan;
+
+    private final Diagnostics diagnostics;
+
+    private final ParserStats.Recorder recorder;
+
+    private final ParserStats.RowSampler sampler;
+
+    private final Map<String, String> constants = new LinkedHashMap<String, String>();
+
+    private boolean constantDatetime;
+
+    private long written;
+
+    private int unpublished;
+
+    private String separator = "\t";
+
+    /**
+     * @param recorder
+     *            recorder of the stats of the parser
+     * @param sampler
+     *            selects the timed rows, kept by the parser over its files
+     */
+    RowWriter(final MeasurementFile mFile, final ColumnPlan plan, final Diagnostics diagnostics, final ParserStats.Recorder recorder,
+            final ParserStats.RowSampler sampler) {
+        this.mFile = mFile;
+        this.plan = plan;
+        this.diagnostics = diagnostics;
+        this.recorder = recorder;
+        this.sampler = sampler;
+    }
+
+    /**
+     * Sets a value that is written to every row of the file. A DATETIME_ID constant replaces the DATETIME_ID of the rows.
+     */
+    void setConstant(final String key, final String value) {
+        constants.put(key, value);
+        constantDatetime = constants.containsKey("DATETIME_ID");
+    }
+
+    /**
+     * Sets the separator used when a row that was added without its original line is logged.
+     */
+    void setSeparator(final String separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Writes a row to the measurement file.
+     *
+     * @param row
+     *            trimmed values of the row, not kept after the call
+     * @param width
+     *            number of values of the row that are written
+     * @param datetime
+     *            DATETIME_ID of the row or null
+     * @param line
+     *            the original row, used in error messages. If null the row is rebuilt from its values when needed.
+     * @param offset
+     *            position of the row in the sourcefile in bytes or -1
+     */
+    void write(final String[] row, final int width, final String datetime, final String line, final long lineNumber, final long offset) {
+        try {
+            final boolean timed = sampler.timeRow();
+            long start = timed ? System.nanoTime() : 0;
+            if (datetime != null && !constantDatetime) {
+                mFile.addData("DATETIME_ID", datetime);
+            }
+            if (mFile.isOpen()) {
+                for (int i = 0; i < width; i++) {
+                    mFile.addData(plan.getKey(i), row[i]);
+                }
+            }
+            mFile.addData(constants);
+            start = recorder.sample(ParserStats.Stage.BIND, start, timed);
+            mFile.saveData();
+            recorder.sample(ParserStats.Stage.SAVE, start, timed);
+            recorder.rowWritten();
+            written++;
+        } catch (final Exception e) {
+            recorder.lineSkipped(RejectReason.WRITE_FAILED);
+            diagnostics.rowSkipped(RejectReason.WRITE_FAILED, lineNumber, offset, line != null ? line : line(row, width), e);
+        }
+        if (++unpublished == PUBLISH_ROWS) {
+            publish();
+        }
+    }
+
+    /**
+     * Publishes the times of the rows written since the last call.
+     */
+    void publish() {
+        unpublished = 0;
+        recorder.publish();
+    }
+
+    private String line(final String[] row, final int width) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+            sb.append(row[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return number of rows written to the measurement file
+     */
+    long getWritten() {
+        return written;
+    }
+
+}
@@ -0,0 +1,363 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.etl.parser.SourceFile;
+
+/**
+ * Takes the next sourcefiles from Main ahead of the parser and reads their contents in the background. <br>
+ * <br>
+ * A fetching thread takes up to depth files from Main before the parser asks for them. Files not larger than maxSize bytes are read into
+ * pooled byte arrays by reading threads, so the parser gets the content of a small file from memory instead of waiting for the file to be
+ * opened and read. The arrays are sized by the size of the file, rounded up to a power of two, and pooled by that size. Larger files and
+ * files that could not be read are handed to the parser without content and are read normally. Files are returned in the order Main gives
+ * them. Files taken from Main but not returned when the prefetcher is closed are returned by {@link #close()}, so that they are still
+ * parsed.
+ *
+ */
+final class SourceFilePrefetcher {
+
+    /**
+     * Gives the files to parse, Main.nextSourceFile() of the parser.
+     */
+    interface FileSource {
+
+        /**
+         * @return next file or null if there are no more files
+         */
+        SourceFile next() throws Exception;
+    }
+
+    /**
+     * Size of the smallest pooled array in bytes.
+     */
+    static final int MIN_BUFFER_SIZE = 4096;
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final FileSource source;
+
+    private final int maxSize;
+
+    private final int poolSize;
+
+    private final Logger log;
+
+    private final BlockingQueue<Fetched> files;
+
+    private final ConcurrentMap<Integer, BlockingQueue<byte[]>> buffers = new ConcurrentHashMap<Integer, BlockingQueue<byte[]>>();
+
+    private final ExecutorService readers;
+
+    private final Thread fetcher;
+
+    private volatile Exception fetchError;
+
+    private volatile boolean closed;
+
+    /**
+     * File the fetching thread had taken from Main when it was stopped.
+     */
+    private volatile SourceFile unqueued;
+
+    /**
+     * Marks the end of files in the queue.
+     */
+    private final Fetched end = new Fetched(null, null);
+
+    /**
+     * @param source
+     *            source of the files
+     * @param depth
+     *            number of files taken ahead of the parser
+     * @param maxSize
+     *            maximum size of a file that is read into memory in bytes
+     * @param threads
+     *            number of threads reading files
+     */
+    SourceFilePrefetcher(final FileSource source, final int depth, final int maxSize, final int threads, final Logger log) {
+        this.source = source;
+        this.maxSize = maxSize;
+        this.log = log;
+        this.files = new ArrayBlockingQueue<Fetched>(Math.max(depth, 1));
+        this.poolSize = Math.max(depth, 1) + Math.max(threads, 1);
+
+        final String name = "ASCIIParser-prefetch-" + INSTANCES.incrementAndGet();
+        this.readers = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        this.fetcher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                fetch();
+            }
+        }, name);
+        this.fetcher.setDaemon(true);
+        this.fetcher.start();
+    }
+
+    /**
+     * Returns the next file.
+     *
+     * @return next file or null if there are no more files
+     * @throws Exception
+     *             if Main failed to give the next file
+     */
+    Prefetched next() throws Exception {
+        final Fetched fetched = files.take();
+        if (fetched == end) {
+            // leave the marker for other parsers
+            files.put(end);
+            if (fetchError != null) {
+                throw fetchError;
+            }
+            return null;
+        }
+        try {
+            return fetched.content.get();
+        } catch (final ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Stops fetching and reading. Waits for the fetching thread to stop, so no file taken from Main is lost.
+     *
+     * @return files taken from Main but not returned by {@link #next()}, in the order Main gave them
+     */
+    List<SourceFile> close() throws InterruptedException {
+        closed = true;
+        fetcher.interrupt();
+        fetcher.join();
+        readers.shutdownNow();
+        final List<SourceFile> remaining = new ArrayList<SourceFile>();
+        Fetched fetched;
+        while ((fetched = files.poll()) != null) {
+            if (fetched != end) {
+                remaining.add(fetched.file);
+            }
+        }
+        if (unqueued != null) {
+            remaining.add(unqueued);
+        }
+        if (!remaining.isEmpty()) {
+            log.fine("Prefetching stopped, " + remaining.size() + " fetched files are returned to the parser");
+        }
+        return remaining;
+    }
+
+    private void fetch() {
+        SourceFile sf = null;
+        try {
+            while (!closed && (sf = source.next()) != null) {
+                final SourceFile file = sf;
+                if (closed) {
+                    unqueued = file;
+                    return;
+                }
+                if (file.fileSize() <= maxSize) {
+                    files.put(new Fetched(file, readers.submit(new Callable<Prefetched>() {
+
+                        @Override
+                        public Prefetched call() {
+                            return read(file);
+                        }
+                    })));
+                } else {
+                    files.put(new Fetched(file, new Done(new Prefetched(file, null, 0, null))));
+                }
+                sf = null;
+            }
+        } catch (final InterruptedException e) {
+            unqueued = sf;
+            return;
+        } catch (final Exception e) {
+            fetchError = e;
+        }
+        try {
+            files.put(end);
+        } catch (final InterruptedException e) {
+            // closed
+        }
+    }
+
+    private Prefetched read(final SourceFile sf) {
+        final int size = bufferSize(sf.fileSize());
+        final BlockingQueue<byte[]> pool = pool(size);
+        byte[] buffer = pool.poll();
+        if (buffer == null) {
+            buffer = new byte[size];
+        }
+        try {
+            final InputStream in = sf.getFileInputStream();
+            try {
+                int length = 0;
+                int count;
+                while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += count;
+                }
+                // a full array means that the file has grown after its size was taken
+                if (length < buffer.length) {
+                    return new Prefetched(sf, buffer, length, pool);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final Exception e) {
+            log.log(Level.FINE, "Prefetching " + sf.getName() + " failed, file is read by the parser", e);
+        }
+        pool.offer(buffer);
+        return new Prefetched(sf, null, 0, null);
+    }
+
+    /**
+     * Returns the size of the array a file is read into: the size of the file and one byte to see the end of the file, rounded up to a
+     * power of two, but not more than maxSize + 1.
+     */
+    int bufferSize(final long fileSize) {
+        final long needed = Math.min(fileSize, maxSize) + 1;
+        long size = MIN_BUFFER_SIZE;
+        while (size < needed) {
+            size <<= 1;
+        }
+        return (int) Math.min(size, (long) maxSize + 1);
+    }
+
+    private BlockingQueue<byte[]> pool(final int size) {
+        BlockingQueue<byte[]> pool = buffers.get(size);
+        if (pool == null) {
+            final BlockingQueue<byte[]> created = new ArrayBlockingQueue<byte[]>(poolSize);
+            pool = buffers.putIfAbsent(size, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * A file taken from Main and its content read in the background.
+     */
+    private static final class Fetched {
+
+        private final SourceFile file;
+
+        private final Future<Prefetched> content;
+
+        Fetched(final SourceFile file, final Future<Prefetched> content) {
+            this.file = file;
+            this.content = content;
+        }
+    }
+
+    /**
+     * A sourcefile and its content if it was read ahead.
+     */
+    static final class Prefetched {
+
+        private final SourceFile sourceFile;
+
+        private byte[] data;
+
+        private final int length;
+
+        private final BlockingQueue<byte[]> pool;
+
+        Prefetched(final SourceFile sourceFile, final byte[] data, final int length, final BlockingQueue<byte[]> pool) {
+            this.sourceFile = sourceFile;
+            this.data = data;
+            this.length = length;
+            this.pool = pool;
+        }
+
+        SourceFile getSourceFile() {
+            return sourceFile;
+        }
+
+        boolean hasData() {
+            return data != null;
+        }
+
+        /**
+         * Returns stream of the content read ahead.
+         */
+        InputStream openStream() {
+            return new ByteArrayInputStream(data, 0, length);
+        }
+
+        /**
+         * Returns the buffer of the content to the pool. The content can not be used after this.
+         */
+        void release() {
+            if (data != null && pool != null) {
+                pool.offer(data);
+            }
+            data = null;
+        }
+    }
+
+    /**
+     * Already completed future.
+     */
+    private static final class Done implements Future<Prefetched> {
+
+        private final Prefetched value;
+
+        Done(final Prefetched value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public Prefetched get() {
+            return value;
+        }
+
+        @Override
+        public Prefetched get(final long timeout, final TimeUnit unit) {
+            return value;
+        }
+    }
+
+}
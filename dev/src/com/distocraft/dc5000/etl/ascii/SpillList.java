@@ -0,0 +1,193 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * List of values that moves to a temporary file when it grows too large. <br>
+ * <br>
+ * Used for the writeForEach values of vertical traverse files, which are collected until the end of the file before any row can be
+ * written. The first values are kept in memory, values beyond the limit are appended to a temporary file as length prefixed UTF-8. The
+ * values are iterated in the order they were added and can be iterated any number of times. Closing the list deletes the file and closes
+ * the readers of iterations that were not finished, so the owner must close it also when parsing fails; the file is not registered to be
+ * deleted on exit, as those are kept until the JVM stops. Not thread safe.
+ *
+ */
+final class SpillList implements Iterable<String> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int memoryLimit;
+
+    private final List<String> values = new ArrayList<String>();
+
+    private File file;
+
+    private DataOutputStream out;
+
+    /**
+     * Readers of the temporary file opened by iterations not finished yet.
+     */
+    private final List<DataInputStream> readers = new ArrayList<DataInputStream>();
+
+    private int spilled;
+
+    /**
+     * @param memoryLimit
+     *            number of values kept in memory, 0 or less to keep all values in memory
+     */
+    SpillList(final int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    void add(final String value) throws IOException {
+        if (memoryLimit <= 0 || values.size() < memoryLimit) {
+            values.add(value);
+            return;
+        }
+        if (out == null) {
+            final File created = File.createTempFile("ASCIIParser", ".spill");
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(created), 65536));
+            } catch (final IOException e) {
+                created.delete();
+                throw e;
+            }
+            file = created;
+        }
+        final byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        spilled++;
+    }
+
+    /**
+     * @return number of values
+     */
+    int size() {
+        return values.size() + spilled;
+    }
+
+    /**
+     * @return number of values written to the temporary file
+     */
+    int getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Returns the values in the order they were added. Reading the temporary file may throw an UncheckedIOException.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Iterator<String>() {
+
+            private int index;
+
+            private DataInputStream in;
+
+            @Override
+            public boolean hasNext() {
+                if (index < size()) {
+                    return true;
+                }
+                closeInput();
+                return false;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (index < values.size()) {
+                    return values.get(index++);
+                }
+                try {
+                    if (in == null) {
+                        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+                        readers.add(in);
+                    }
+                    final byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    index++;
+                    return new String(bytes, UTF8);
+                } catch (final EOFException e) {
+                    closeInput();
+                    throw new UncheckedIOException("Spill file " + file + " truncated", e);
+                } catch (final IOException e) {
+                    closeInput();
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            private void closeInput() {
+                if (in != null) {
+                    readers.remove(in);
+                    closeReader(in);
+                    in = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return number of readers of the temporary file left open by iterations
+     */
+    int getOpenReaders() {
+        return readers.size();
+    }
+
+    private static void closeReader(final DataInputStream in) {
+        try {
+            in.close();
+        } catch (final IOException e) {
+            // only read from
+        }
+    }
+
+    /**
+     * Removes the values, closes the readers of unfinished iterations and deletes the temporary file.
+     */
+    void close() {
+        values.clear();
+        spilled = 0;
+        for (DataInputStream in : readers) {
+            closeReader(in);
+        }
+        readers.clear();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                // the file is deleted anyway
+            }
+            out = null;
+        }
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.distocraft.dc5000.etl.ascii;
+
+/**
+ * Bounded table of recurring cell values. <br>
+ * <br>
+ * PM files repeat the same node types, FDN prefixes and small counter values on millions of rows. Looking up a value returns the instance
+ * already in the table, so the values handed to the measurement file share one String per distinct value instead of a copy per row, and
+ * values of field slices are looked up without creating a String at all. The table is a fixed size open addressing table searched with a
+ * few linear probes. When the probed slots are taken by other values the first one is replaced, so the table never grows and stale values
+ * are pushed out by recurring ones. Values longer than {@link #MAX_VALUE_LENGTH} characters are not stored. <br>
+ * <br>
+ * Hits, misses and replaced values are counted for tuning the size. Not thread safe, every parser instance has its own.
+ *
+ */
+final class ValueDictionary {
+
+    static final int MAX_VALUE_LENGTH = 64;
+
+    private static final int MIN_SIZE = 16;
+
+    private static final int MAX_SIZE = 1 << 24;
+
+    private static final int PROBES = 4;
+
+    private final String[] values;
+
+    private final int[] hashes;
+
+    private final int mask;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * @param size
+     *            number of values, rounded up to a power of two
+     */
+    ValueDictionary(final int size) {
+        final int capacity = capacity(size);
+        values = new String[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return number of slots of a table created with the given size
+     */
+    static int capacity(final int size) {
+        int capacity = MIN_SIZE;
+        while (capacity < size && capacity < MAX_SIZE) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    int getCapacity() {
+        return values.length;
+    }
+
+    /**
+     * Returns the canonical String of the characters.
+     */
+    String get(final char[] chars, final int start, final int end) {
+        final int length = end - start;
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_VALUE_LENGTH) {
+            return new String(chars, start, length);
+        }
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        final int slot = spread(hash) & mask;
+        for (int p = 0; p < PROBES; p++) {
+            final int index = (slot + p) & mask;
+            final String value = values[index];
+            if (value == null) {
+                return store(index, hash, new String(chars, start, length));
+            }
+            if (hashes[index] == hash && equals(value, chars, start, length)) {
+                hits++;
+                return value;
+            }
+        }
+        evictions++;
+        return store(slot, hash, new String(chars, start, length));
+    }
+
+    /**
+     * Returns the canonical instance of a value. A value not in the table is stored as it is.
+     */
+    String get(final String value) {
+        final int length = value.length();
+        if (length == 0 || length > MAX_VALUE_LENGTH) {
+            return value;
+        }
+
+        // same hash as for the characters
+        final int hash = value.hashCode();
+        final int slot = spread(hash) & mask;
+        for (int p = 0; p < PROBES; p++) {
+            final int index = (slot + p) & mask;
+            final String stored = values[index];
+            if (stored == null) {
+                return store(index, hash, value);
+            }
+            if (hashes[index] == hash && stored.equals(value)) {
+                hits++;
+                return stored;
+            }
+        }
+        evictions++;
+        return store(slot, hash, value);
+    }
+
+    private String store(final int index, final int hash, final String value) {
+        misses++;
+        values[index] = value;
+        hashes[index] = hash;
+        return value;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(final String value, final char[] chars, final int start, final int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return lookups that returned a stored value
+     */
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return lookups that stored a new value
+     */
+    long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return stored values replaced by another value
+     */
+    long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Sets the counters to zero. The values are kept.
+     */
+    void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+}
@@ -0,0 +1,315 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Writes synthetic ASCII PM files for benchmarks and capacity tests. <br>
+ * <br>
+ * Every corpus is written into its own directory together with a file named parser.properties containing the sourcefile properties the
+ * files are parsed with. The content depends only on the seed and the options, so the same command always writes the same bytes. Usage:
+ *
+ * <pre>
+ * java com.distocraft.dc5000.etl.ascii.WorkloadGenerator &lt;kind&gt; &lt;directory&gt; [option=value ...]
+ * </pre>
+ *
+ * Kinds and their options:
+ * <ul>
+ * <li>horizontal: files (1), rows (100000), columns (100, 1 - 2000), delimiter (pipe, tab or regex), bom (false), crlf (false)</li>
+ * <li>vertical: files (1), cells (12), counters (200); key/value files with an eNodeB FDN and a row for each cell (writeForEach)</li>
+ * <li>rop: files (10000), rows (5), columns (20); one ROP of tiny horizontal files</li>
+ * </ul>
+ * All kinds take option seed (1).
+ *
+ */
+public final class WorkloadGenerator {
+
+    static final String PROPERTIES_FILE = "parser.properties";
+
+    static final int MAX_COLUMNS = 2000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    /**
+     * Columns written before the counters of a horizontal file.
+     */
+    private static final String[] KEY_COLUMNS = { "DATE_TIME", "nodeFDN", "nodeType" };
+
+    private static final int NODES = 1000;
+
+    /**
+     * Directory of the interface, the OSS id is taken from it when FLS is checked.
+     */
+    private static final String IN_DIR = "${PMDATA_DIR}/eniq_oss_1/lterbs/";
+
+    private final long seed;
+
+    WorkloadGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes horizontal files with a header row.
+     *
+     * @param delimiter
+     *            pipe, tab or regex. With regex the columns are separated by a semicolon surrounded by a varying number of spaces.
+     * @return properties of the files
+     */
+    Properties horizontal(final File dir, final int files, final long rows, final int columns, final String delimiter, final boolean bom,
+            final boolean crlf) throws IOException {
+        final String separator;
+        final Properties properties = new Properties();
+        if ("pipe".equals(delimiter)) {
+            separator = "|";
+            properties.setProperty("column_delimiter", "\\|");
+        } else if ("tab".equals(delimiter)) {
+            separator = "\t";
+            properties.setProperty("column_delimiter", "\t");
+        } else if ("regex".equals(delimiter)) {
+            separator = null;
+            properties.setProperty("column_delimiter", "\\s*;\\s*");
+        } else {
+            throw new IllegalArgumentException("Unknown delimiter " + delimiter);
+        }
+        final String rowDelimiter = crlf ? "\r\n" : "\n";
+        properties.setProperty("row_delimiter", rowDelimiter);
+        properties.setProperty("tag_id_mode", "" + ASCIIParser.TAGID_FROM_CONFIG);
+        properties.setProperty("tag_id", "PM_HORIZONTAL");
+        properties.setProperty("data_id_mode", "" + ASCIIParser.DATAID_FROM_HEADER);
+        properties.setProperty("header_skip", "1");
+
+        final int width = Math.max(1, Math.min(columns, MAX_COLUMNS));
+        final String[] header = header(width);
+        if (header[0].equals(KEY_COLUMNS[0])) {
+            properties.setProperty("datatime_mode", "" + ASCIIParser.DATATIME_FROM_COLUMN);
+            properties.setProperty("datatime_column", KEY_COLUMNS[0]);
+        }
+
+        for (int f = 0; f < files; f++) {
+            final Random random = random(f);
+            final Writer out = open(new File(dir, "A20260101.0000+0000-0015+0000_horizontal_" + f + ".txt"), bom);
+            try {
+                writeRow(out, header, separator, rowDelimiter, random);
+                final String[] row = new String[width];
+                for (long r = 0; r < rows; r++) {
+                    for (int c = 0; c < width; c++) {
+                        row[c] = value(header[c], r, random);
+                    }
+                    writeRow(out, row, separator, rowDelimiter, random);
+                }
+            } finally {
+                out.close();
+            }
+        }
+        return store(dir, properties);
+    }
+
+    /**
+     * Writes vertical traverse files. A file has the FDN of one eNodeB, its counters and the FDNs of its cells. The parser writes one row for
+     * each cell.
+     *
+     * @return properties of the files
+     */
+    Properties vertical(final File dir, final int files, final int cells, final int counters) throws IOException {
+        for (int f = 0; f < files; f++) {
+            final Random random = random(f);
+            final String node = node(f);
+            final Writer out = open(new File(dir, node + "_A20260101.0000+0000-0015+0000_" + f + ".txt"), false);
+            try {
+                out.write("FDN\tSubNetwork=ONRM_ROOT_MO,SubNetwork=LTE01,MeContext=" + node + "\n");
+                out.write("nodeType\tERBS\n");
+                for (int c = 0; c < counters; c++) {
+                    out.write("pmCounter" + c + "\t" + counter(random) + "\n");
+                }
+                for (int c = 0; c < cells; c++) {
+                    out.write("FDN\tManagedElement=1,ENodeBFunction=1,EUtranCellFDD=" + (c + 1) + "\n");
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        final Properties properties = new Properties();
+        properties.setProperty("column_delimiter", "\t");
+        properties.setProperty("row_delimiter", "\n");
+        properties.setProperty("tag_id_mode", "" + ASCIIParser.TAGID_FROM_CONFIG);
+        properties.setProperty("tag_id", "PM_VERTICAL");
+        properties.setProperty("verticalTraversing", "true");
+        properties.setProperty("writeForEach", "FDN");
+        properties.setProperty("fileNameFormat", "(LTE\\d+ERBS\\d+)_.*");
+        return store(dir, properties);
+    }
+
+    /**
+     * Writes one ROP of tiny horizontal files, each from a different node.
+     *
+     * @return properties of the files
+     */
+    Properties rop(final File dir, final int files, final int rows, final int columns) throws IOException {
+        final int width = Math.max(1, Math.min(columns, MAX_COLUMNS));
+        final String[] header = header(width);
+        for (int f = 0; f < files; f++) {
+            final Random random = random(f);
+            final Writer out = open(new File(dir, "A20260101.0000+0000-0015+0000_" + node(f) + ".txt"), false);
+            try {
+                writeRow(out, header, "\t", "\n", random);
+                final String[] row = new String[width];
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < width; c++) {
+                        row[c] = value(header[c], f, random);
+                    }
+                    writeRow(out, row, "\t", "\n", random);
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        final Properties properties = new Properties();
+        properties.setProperty("tag_id_mode", "" + ASCIIParser.TAGID_FROM_FILENAME);
+        properties.setProperty("tag_id", "_LTE\\d+(ERBS)\\d+");
+        properties.setProperty("data_id_mode", "" + ASCIIParser.DATAID_FROM_HEADER);
+        properties.setProperty("header_skip", "1");
+        if (header[0].equals(KEY_COLUMNS[0])) {
+            properties.setProperty("datatime_mode", "" + ASCIIParser.DATATIME_FROM_COLUMN);
+            properties.setProperty("datatime_column", KEY_COLUMNS[0]);
+        }
+        return store(dir, properties);
+    }
+
+    private Random random(final int file) {
+        return new Random(seed * 1000003L + file);
+    }
+
+    private static String[] header(final int width) {
+        final String[] header = new String[width];
+        for (int c = 0; c < width; c++) {
+            header[c] = width > KEY_COLUMNS.length && c < KEY_COLUMNS.length ? KEY_COLUMNS[c] : "pmCounter" + c;
+        }
+        return header;
+    }
+
+    private static String node(final int index) {
+        return String.format(Locale.ROOT, "LTE%02dERBS%05d", index / NODES % 100 + 1, index % NODES + 1);
+    }
+
+    private String value(final String column, final long row, final Random random) {
+        if (KEY_COLUMNS[0].equals(column)) {
+            return "2026-01-01 00:00:00";
+        } else if (KEY_COLUMNS[1].equals(column)) {
+            return "SubNetwork=ONRM_ROOT_MO,SubNetwork=LTE01,MeContext=" + node((int) (row % NODES));
+        } else if (KEY_COLUMNS[2].equals(column)) {
+            return "ERBS";
+        }
+        return counter(random);
+    }
+
+    /**
+     * Counter value. Like in real data most values are small and repeat, some are empty.
+     */
+    private static String counter(final Random random) {
+        final int kind = random.nextInt(20);
+        if (kind == 0) {
+            return "";
+        } else if (kind < 10) {
+            return Integer.toString(random.nextInt(10));
+        } else if (kind < 18) {
+            return Integer.toString(random.nextInt(100000));
+        }
+        return Long.toString(random.nextLong() & Long.MAX_VALUE);
+    }
+
+    private static Writer open(final File file, final boolean bom) throws IOException {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+        if (bom) {
+            out.write(BOM);
+        }
+        return new OutputStreamWriter(out, UTF8);
+    }
+
+    private static void writeRow(final Writer out, final String[] values, final String separator, final String rowDelimiter,
+            final Random random) throws IOException {
+        for (int c = 0; c < values.length; c++) {
+            if (c > 0) {
+                if (separator == null) {
+                    // regexp delimiter, varying whitespace around the semicolon
+                    final int spaces = random.nextInt(3);
+                    out.write("  ", 0, spaces);
+                    out.write(';');
+                    out.write("  ", 0, 2 - spaces);
+                } else {
+                    out.write(separator);
+                }
+            }
+            out.write(values[c]);
+        }
+        out.write(rowDelimiter);
+    }
+
+    private static Properties store(final File dir, final Properties properties) throws IOException {
+        properties.setProperty("inDir", IN_DIR);
+        final OutputStream out = new FileOutputStream(new File(dir, PROPERTIES_FILE));
+        try {
+            properties.store(out, "Sourcefile properties of generated ASCII PM files");
+        } finally {
+            out.close();
+        }
+        return properties;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: WorkloadGenerator horizontal|vertical|rop <directory> [option=value ...]");
+            return;
+        }
+
+        final Map<String, String> options = new HashMap<String, String>();
+        for (int i = 2; i < args.length; i++) {
+            final int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Invalid option " + args[i]);
+            }
+            options.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+
+        final File dir = new File(args[1]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+
+        final WorkloadGenerator generator = new WorkloadGenerator(Long.parseLong(option(options, "seed", "1")));
+        final String kind = args[0];
+        if ("horizontal".equals(kind)) {
+            generator.horizontal(dir, Integer.parseInt(option(options, "files", "1")), Long.parseLong(option(options, "rows", "100000")),
+                    Integer.parseInt(option(options, "columns", "100")), option(options, "delimiter", "pipe"),
+                    Boolean.parseBoolean(option(options, "bom", "false")), Boolean.parseBoolean(option(options, "crlf", "false")));
+        } else if ("vertical".equals(kind)) {
+            generator.vertical(dir, Integer.parseInt(option(options, "files", "1")), Integer.parseInt(option(options, "cells", "12")),
+                    Integer.parseInt(option(options, "counters", "200")));
+        } else if ("rop".equals(kind)) {
+            generator.rop(dir, Integer.parseInt(option(options, "files", "10000")), Integer.parseInt(option(options, "rows", "5")),
+                    Integer.parseInt(option(options, "columns", "20")));
+        } else {
+            throw new IllegalArgumentException("Unknown kind " + kind);
+        }
+    }
+
+    private static String option(final Map<String, String> options, final String name, final String defaultValue) {
+        final String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+}
@@ -6,6 +6,7 @@
 package com.distocraft.dc5000.etl.ascii;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -13,20 +14,33 @@ import com.ericsson.eniq.common.testutilities.DirectoryHelper;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -36,6 +50,8 @@ import org.junit.Test;
 import ssc.rockfactory.RockFactory;
 
 import com.distocraft.dc5000.common.StaticProperties;
+import com.distocraft.dc5000.etl.parser.Main;
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
 import com.distocraft.dc5000.etl.parser.MeasurementFileImpl;
 import com.distocraft.dc5000.etl.parser.ParseSession;
 import com.distocraft.dc5000.etl.parser.ParserDebugger;
@@ -64,9 +80,7 @@ public class ASCIIParserTest {
 
   private static Field workerName;
   
-  private transient Field block;
-  
-  private transient Field rowDelimLength;
+  private transient Field scanner;
  
   private transient Method readLine;
     
@@ -102,6 +116,84 @@ public class ASCIIParserTest {
     }
   }
 
+  /**
+   * Parser that writes the rows of each measurement file to a list instead of the output directory.
+   */
+  private static class CollectingASCIIParser extends ASCIIParser {
+
+    final List<List<Map<String, String>>> files = new ArrayList<List<Map<String, String>>>();
+
+    final List<String> fileNames = new ArrayList<String>();
+
+    CollectingASCIIParser() {
+      init(null, "techPack", "setType", "setName", "worker");
+    }
+
+    @Override
+    protected MeasurementFile createMeasurementFile(final SourceFile sf, final String tagID) {
+      final List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+      files.add(rows);
+      fileNames.add(sf.getName());
+      final DFormat dataformat = new DFormat("ifname", tagID, "dfid", "fname", "trID");
+      return (MeasurementFile) Proxy.newProxyInstance(MeasurementFile.class.getClassLoader(), new Class[] { MeasurementFile.class },
+          new InvocationHandler() {
+
+            private Map<String, String> row = new HashMap<String, String>();
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+              final String name = method.getName();
+              if (name.equals("addData") && args.length == 1) {
+                row.putAll((Map<String, String>) args[0]);
+              } else if (name.equals("addData")) {
+                row.put((String) args[0], (String) args[1]);
+              } else if (name.equals("saveData")) {
+                row.remove("filename");
+                row.remove("DIRNAME");
+                row.remove("JVM_TIMEZONE");
+                rows.add(row);
+                row = new HashMap<String, String>();
+              } else if (name.equals("isOpen")) {
+                return Boolean.TRUE;
+              } else if (name.equals("getDataformat")) {
+                return dataformat;
+              } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+              } else if (name.equals("equals")) {
+                return proxy == args[0];
+              }
+              return null;
+            }
+          });
+    }
+
+    List<Map<String, String>> parse(final String name, final String data, final Properties prop) throws Exception {
+      final File file = new File(TMP_DIR, name);
+      final FileWriter writer = new FileWriter(file);
+      try {
+        writer.write(data);
+      } finally {
+        writer.close();
+      }
+      try {
+        return parse(file, prop);
+      } finally {
+        file.delete();
+      }
+    }
+
+    List<Map<String, String>> parse(final File file, final Properties prop) throws Exception {
+      final int before = files.size();
+      parse(sourceFileC.newInstance(new Object[] { file, prop, null, null, null, null, null }), "techPack", "setType", "setName");
+      final List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+      for (List<Map<String, String>> fileRows : files.subList(before, files.size())) {
+        rows.addAll(fileRows);
+      }
+      return rows;
+    }
+  }
+
   @BeforeClass
   public static void init() {
     DirectoryHelper.mkdirs(TMP_DIR);
@@ -350,13 +442,11 @@ public class ASCIIParserTest {
   public void setUp() throws SecurityException, NoSuchFieldException, NoSuchMethodException {
 
 
-    block = ASCIIParser.class.getDeclaredField("block");
-    
-    rowDelimLength = ASCIIParser.class.getDeclaredField("rowDelimLength");
+    scanner = ASCIIParser.class.getDeclaredField("scanner");
 
-    readLine = ASCIIParser.class.getDeclaredMethod("readLine", String.class);   
+    readLine = ASCIIParser.class.getDeclaredMethod("readLine");   
     
-    readHeader = ASCIIParser.class.getDeclaredMethod("readHeader",String.class,String.class); 
+    readHeader = ASCIIParser.class.getDeclaredMethod("readHeader",String.class,Delimiter.class); 
        
     log = ASCIIParser.class.getDeclaredField("log"); 
     
@@ -370,8 +460,7 @@ public class ASCIIParserTest {
     readHeader.setAccessible(true);
     log.setAccessible(true);
     br.setAccessible(true);
-    rowDelimLength.setAccessible(true);
-    block.setAccessible(true);
+    scanner.setAccessible(true);
     staticProp.setAccessible(true);
     props.setAccessible(true);
  
@@ -383,27 +472,14 @@ public class ASCIIParserTest {
 
     ASCIIParser asciiParser = new ASCIIParser();
     
-    block.set(asciiParser,null);    
+    scanner.set(asciiParser,null);    
     
-    assertEquals("Checking for block =null",readLine.invoke(asciiParser, "\t"),null);
+    assertEquals("Checking for scanner =null",readLine.invoke(asciiParser),null);
     
     asciiParser = new ASCIIParser();
    
-    block.set(asciiParser,"DUMMY_MME3\t0A0A0A01000000000000000000000000\tsysadm\tletmein123\t2011\t/tmp/OMS_LOGS/ebs/ready\tDUMMY_POOL"); 
-        
-    readLine.setAccessible(true);
-    
     log.set(asciiParser, Logger.getLogger("etl.Test"));
       
-    assertEquals("Checking for readLine method Functionality",readLine.invoke(asciiParser, "\t"),"DUMMY_MME3");
-    
-    rowDelimLength.set(asciiParser, 1);
-    
-    assertEquals("Checking for the blcok value if(result.length > 1)",block.get(asciiParser),"0A0A0A01000000000000000000000000\tsysadm\tletmein123\t2011\t/tmp/OMS_LOGS/ebs/ready\tDUMMY_POOL");
-    
-    /*
-     * Test case to test for the result length is not greater than 1
-     */
    String homeDir = System.getProperty("user.home");
    File sampleTopologyFile = new File(homeDir, "DIM_E_SGEH_SGSN.Topology.23052011"); // Input File to the parser.
  
@@ -411,26 +487,24 @@ public class ASCIIParserTest {
     try{
       
       createTopologyFile(asciiParser,sampleTopologyFile,"DUMMY_MME3\t0A0A0A01000000000000000000000000\tsysadm\tletmein123\t2011\t/tmp/OMS_LOGS/ebs/ready\tDUMMY_POOL");
-      
-      block.set(asciiParser, "");
      
-      assertEquals("Checking for reading the Next Line",readLine.invoke(asciiParser, "\t") ,"DUMMY_MME3");
+      assertEquals("Checking for readLine method Functionality",readLine.invoke(asciiParser) ,"DUMMY_MME3");
+      
+      assertEquals("Checking for reading the Next Line",readLine.invoke(asciiParser) ,"0A0A0A01000000000000000000000000");
      
       
       /*
        * Test case to test when the file reached the EOF character.
-       * Create an empty file to parse
+       * Create a file without delimiters to parse
        */
-      createTopologyFile(asciiParser,sampleTopologyFile,null);
-      
-      block.set(asciiParser, "test");
+      createTopologyFile(asciiParser,sampleTopologyFile,"test");
       
       // Test for finalBlock !=null
-      assertEquals("Test for finalBlock!=null",readLine.invoke(asciiParser, "\t") ,"test");
+      assertEquals("Test for finalBlock!=null",readLine.invoke(asciiParser) ,"test");
       
       
-      //Test for finalBlock==null,since block is null for this time.
-      assertEquals("Checking for final Block==null",readLine.invoke(asciiParser, "\t") ,null);
+      //Test for finalBlock==null,since whole file is read for this time.
+      assertEquals("Checking for final Block==null",readLine.invoke(asciiParser) ,null);
       
       
     } catch (IOException e) {
@@ -451,7 +525,9 @@ public class ASCIIParserTest {
       }
  
       bw.close();
-      br.set(asciiParser,new BufferedReader(new FileReader(sampleTopologyFile)));
+      final BufferedReader reader = new BufferedReader(new FileReader(sampleTopologyFile));
+      br.set(asciiParser,reader);
+      scanner.set(asciiParser,new ReaderRowScanner(reader, Delimiter.compile("\t"), -1, 10000));
   }
 
   @Test
@@ -461,8 +537,6 @@ public class ASCIIParserTest {
       ASCIIParser ascii = new ASCIIParser();
       log.set(ascii, Logger.getLogger("etl.Test"));
 
-      block.set(ascii,null);    
-      
       List<String> list = new ArrayList<String>();
       list.add("XXX");
       list.add("YYY");
@@ -470,13 +544,340 @@ public class ASCIIParserTest {
       
       
       String headerLine = "XXX\tYYY\tZZZ";
-      String delimiter = "\t";
+      Delimiter delimiter = Delimiter.compile("\t");
       
       assertEquals("Checking readHeader method",readHeader.invoke(ascii,headerLine,delimiter),list);
       }catch(Exception e){
        fail("Exception in executing readHeaderTest\t"+e.getMessage());
       }}
   
+  @Test
+  public void recordNodeIsNotCarriedToNextFile() throws Exception {
+    final Properties prop = new Properties();
+    prop.setProperty("column_delimiter", "=");
+    prop.setProperty("tag_id_mode", "0");
+    prop.setProperty("tag_id", "T");
+    prop.setProperty("verticalTraversing", "true");
+    prop.setProperty("writeForEach", "cell");
+    prop.setProperty("record_boundary", "#NODE (.+)");
+
+    final String second = "cell=N2\ncell=c\nattr=1\n";
+    final List<Map<String, String>> expected = new CollectingASCIIParser().parse("vt2.txt", second, prop);
+
+    final CollectingASCIIParser parser = new CollectingASCIIParser();
+    final List<Map<String, String>> first = parser.parse("vt1.txt", "#NODE N1\ncell=a\n#NODE N2\ncell=b\n", prop);
+    assertEquals(4, first.size());
+    assertEquals(expected, parser.parse("vt2.txt", second, prop));
+  }
+
+  @Test
+  public void flsNodesAreSentOncePerFileAtItsEnd() throws Exception {
+    final List<String> submitted = new ArrayList<String>();
+    final CollectingASCIIParser parser = new CollectingASCIIParser() {
+
+      @Override
+      String getFlsHostName(final SourceFile sf) {
+        return "enm1";
+      }
+
+      @Override
+      int submitToFls(final Collection<FlsNotification> notifications) {
+        // rows of the file written so far
+        final List<Map<String, String>> rows = files.get(files.size() - 1);
+        for (FlsNotification notification : notifications) {
+          submitted.add(notification.getNodeFDN() + "@" + rows.size());
+        }
+        submitted.add("end");
+        return 0;
+      }
+    };
+    final Properties prop = new Properties();
+    prop.setProperty("column_delimiter", "=");
+    prop.setProperty("tag_id_mode", "0");
+    prop.setProperty("tag_id", "T");
+    prop.setProperty("verticalTraversing", "true");
+    prop.setProperty("writeForEach", "cell");
+    prop.setProperty("record_boundary", "#NODE");
+
+    final String first = "#NODE\nnodeFDN=fdn1\nnodeType=ERBS\n#NODE\nnodeFDN=fdn2\nnodeType=ERBS\n#NODE\nnodeFDN=fdn1\nnodeType=ERBS\n";
+    assertEquals(3, parser.parse("fls1.txt", first, prop).size());
+    // all nodes of the file are handed over at once
+    assertEquals(Arrays.asList("fdn1@3", "fdn2@3", "end"), submitted);
+
+    submitted.clear();
+    final String second = "#NODE\nnodeFDN=fdn1\nnodeType=ERBS\n#NODE\nnodeFDN=fdn3\nnodeType=ERBS\n";
+    assertEquals(2, parser.parse("fls2.txt", second, prop).size());
+    assertEquals(Arrays.asList("fdn1@2", "fdn3@2", "end"), submitted);
+
+    // nothing is sent for a truncated gzip file that fails after its first nodes
+    submitted.clear();
+    final File file = new File(TMP_DIR, "fls3.txt.gz");
+    final Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), "UTF-8");
+    try {
+      for (int i = 0; i < 100000; i++) {
+        writer.write("#NODE\nnodeFDN=fdn" + i + "\nnodeType=ERBS\n");
+      }
+    } finally {
+      writer.close();
+    }
+    final RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    try {
+      truncated.setLength(truncated.length() / 2);
+    } finally {
+      truncated.close();
+    }
+    try {
+      assertFalse(parser.parse(file, prop).isEmpty());
+    } finally {
+      file.delete();
+    }
+    assertTrue(submitted.toString(), submitted.isEmpty());
+  }
+
+  @Test
+  public void stagesOfSmallFilesAreTimed() throws Exception {
+    final ParserStats stats = ParserStats.getInstance("techPack", "setName", "worker");
+    stats.reset();
+    final Properties prop = new Properties();
+    prop.setProperty("column_delimiter", "\\|");
+    prop.setProperty("tag_id_mode", "0");
+    prop.setProperty("tag_id", "T");
+    prop.setProperty("data_id_mode", "0");
+
+    // fewer rows than are in a sample
+    assertEquals(3, new CollectingASCIIParser().parse("small.txt", "a|b\n1|2\n3|4\n5|6\n", prop).size());
+    for (ParserStats.Stage stage : new ParserStats.Stage[] { ParserStats.Stage.SCAN, ParserStats.Stage.TOKENIZE,
+        ParserStats.Stage.BIND, ParserStats.Stage.SAVE }) {
+      assertEquals(stage.name(), 3, stats.getStageCount(stage));
+      assertTrue(stage.name(), stats.getStageNanos(stage) > 0);
+    }
+  }
+
+  @Test
+  public void concurrentFilesAreKeptSeparate() throws Exception {
+    final int fileCount = 40;
+    final List<SourceFile> sourceFiles = new ArrayList<SourceFile>();
+    for (int f = 0; f < fileCount; f++) {
+      // every other file is read in parallel chunks, every tenth one fails
+      final String name = (f % 10 == 9 ? "failing_" : "concurrent_") + f + ".txt";
+      final Properties prop = new Properties();
+      prop.setProperty("column_delimiter", "\\|");
+      prop.setProperty("tag_id_mode", "0");
+      prop.setProperty("tag_id", "T");
+      prop.setProperty("data_id_mode", "0");
+      prop.setProperty("input_mode", "1");
+      if (f % 2 == 0) {
+        prop.setProperty("parallel_threshold", "1");
+        prop.setProperty("parallel_chunk_size", "64");
+      }
+      final File file = new File(TMP_DIR, name);
+      final Writer writer = new FileWriter(file);
+      try {
+        writer.write("file|row\n");
+        for (int row = 0; row < 100 + f; row++) {
+          writer.write(name + "|" + row + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+      sourceFiles.add(sourceFileC.newInstance(new Object[] { file, prop, null, null, null, null, null }));
+    }
+
+    Properties staticProperties = (Properties) props.get(null);
+    if (staticProperties == null) {
+      staticProperties = new Properties();
+      props.set(null, staticProperties);
+    }
+    final RecordingMain main = new RecordingMain(sourceFiles);
+    final List<ConcurrentASCIIParser> parsers = new ArrayList<ConcurrentASCIIParser>();
+    final ConcurrentASCIIParser parser = new ConcurrentASCIIParser(parsers);
+    parser.init(main, "techPack", "setType", "setName", "worker");
+    staticProperties.setProperty("ASCIIParser.concurrentFiles", "4");
+    try {
+      parser.run();
+    } finally {
+      staticProperties.remove("ASCIIParser.concurrentFiles");
+      for (SourceFile sf : sourceFiles) {
+        new File(TMP_DIR, sf.getName()).delete();
+      }
+    }
+
+    // Main is called by one thread at a time, once per file in order
+    assertFalse(main.overlapped);
+    assertEquals(fileCount, main.calls.size());
+    for (SourceFile sf : sourceFiles) {
+      final String result = sf.getName().startsWith("failing") ? "errorParse" : "postParse";
+      assertEquals(sf.getName(), Arrays.asList("preParse", result, "finallyParse"), main.calls.get(sf.getName()));
+    }
+
+    assertEquals(4, parsers.size());
+    final Set<String> parsed = new HashSet<String>();
+    for (ConcurrentASCIIParser concurrent : parsers) {
+      for (int i = 0; i < concurrent.files.size(); i++) {
+        final String name = concurrent.fileNames.get(i);
+        assertTrue(name, parsed.add(name));
+        final List<Map<String, String>> rows = concurrent.files.get(i);
+        assertEquals(name, 100 + Integer.parseInt(name.substring(name.indexOf('_') + 1, name.indexOf('.'))), rows.size());
+        final Set<String> rowNumbers = new HashSet<String>();
+        for (Map<String, String> row : rows) {
+          assertEquals(name, row.get("file"));
+          rowNumbers.add(row.get("row"));
+        }
+        assertEquals(name, rows.size(), rowNumbers.size());
+      }
+    }
+    assertEquals(fileCount - fileCount / 10, parsed.size());
+  }
+
+  /**
+   * Parser whose concurrent parsers collect their rows too. Files named failing_* fail.
+   */
+  private static class ConcurrentASCIIParser extends CollectingASCIIParser {
+
+    private final List<ConcurrentASCIIParser> parsers;
+
+    ConcurrentASCIIParser(final List<ConcurrentASCIIParser> parsers) {
+      this.parsers = parsers;
+      synchronized (parsers) {
+        parsers.add(this);
+      }
+    }
+
+    @Override
+    ASCIIParser createConcurrentParser() {
+      return new ConcurrentASCIIParser(parsers);
+    }
+
+    @Override
+    protected MeasurementFile createMeasurementFile(final SourceFile sf, final String tagID) {
+      if (sf.getName().startsWith("failing")) {
+        throw new IllegalStateException("failing file");
+      }
+      return super.createMeasurementFile(sf, tagID);
+    }
+  }
+
+  /**
+   * Main handing out a list of files and recording the calls of every file. Notes if two threads call it at the same time.
+   */
+  private static class RecordingMain extends Main {
+
+    private final List<SourceFile> sourceFiles;
+
+    final Map<String, List<String>> calls = new HashMap<String, List<String>>();
+
+    private final AtomicBoolean busy = new AtomicBoolean();
+
+    volatile boolean overlapped;
+
+    RecordingMain(final List<SourceFile> sourceFiles) {
+      this.sourceFiles = new ArrayList<SourceFile>(sourceFiles);
+    }
+
+    @Override
+    public SourceFile nextSourceFile() {
+      enter();
+      try {
+        return sourceFiles.isEmpty() ? null : sourceFiles.remove(0);
+      } finally {
+        exit();
+      }
+    }
+
+    @Override
+    public void preParse(final SourceFile sf) {
+      call(sf, "preParse");
+    }
+
+    @Override
+    public void postParse(final SourceFile sf) {
+      call(sf, "postParse");
+    }
+
+    @Override
+    public void errorParse(final Exception e, final SourceFile sf) {
+      call(sf, "errorParse");
+    }
+
+    @Override
+    public void finallyParse(final SourceFile sf) {
+      call(sf, "finallyParse");
+    }
+
+    private void call(final SourceFile sf, final String method) {
+      enter();
+      try {
+        List<String> fileCalls = calls.get(sf.getName());
+        if (fileCalls == null) {
+          fileCalls = new ArrayList<String>();
+          calls.put(sf.getName(), fileCalls);
+        }
+        fileCalls.add(method);
+      } finally {
+        exit();
+      }
+    }
+
+    private void enter() {
+      if (!busy.compareAndSet(false, true)) {
+        overlapped = true;
+      }
+      // gives the other threads a chance to call at the same time
+      Thread.yield();
+    }
+
+    private void exit() {
+      busy.set(false);
+    }
+  }
+
+  @Test
+  public void spillFilesAreDeletedWhenParsingFails() throws Exception {
+    final Properties prop = new Properties();
+    prop.setProperty("column_delimiter", "=");
+    prop.setProperty("tag_id_mode", "0");
+    prop.setProperty("tag_id", "T");
+    prop.setProperty("verticalTraversing", "true");
+    prop.setProperty("writeForEach", "cell");
+    prop.setProperty("vertical_spill_threshold", "1");
+
+    // a truncated gzip file fails after the first values have been spilled
+    final File file = new File(TMP_DIR, "vt.txt.gz");
+    final Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), "UTF-8");
+    try {
+      for (int i = 0; i < 100000; i++) {
+        writer.write("cell=" + i + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+    final RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    try {
+      truncated.setLength(truncated.length() / 2);
+    } finally {
+      truncated.close();
+    }
+
+    final int before = spillFiles();
+    try {
+      new CollectingASCIIParser().parse(file, prop);
+    } finally {
+      file.delete();
+    }
+    assertEquals(before, spillFiles());
+  }
+
+  private static int spillFiles() {
+    final File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles(new FilenameFilter() {
+
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith("ASCIIParser") && name.endsWith(".spill");
+      }
+    });
+    return files == null ? 0 : files.length;
+  }
+
   @Test(expected=NullPointerException.class)
   public void runTest() throws IllegalArgumentException, IllegalAccessException{
     
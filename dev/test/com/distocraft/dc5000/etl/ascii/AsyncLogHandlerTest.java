@@ -0,0 +1,97 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+public class AsyncLogHandlerTest {
+
+  @Test
+  public void testRecordsGoToParent() throws Exception {
+    final Logger parent = Logger.getLogger("etl.Test.AsyncLogHandlerTest");
+    final Logger child = Logger.getLogger("etl.Test.AsyncLogHandlerTest.rows");
+    final List<LogRecord> records = new CopyOnWriteArrayList<LogRecord>();
+    final List<String> threads = new CopyOnWriteArrayList<String>();
+    parent.setUseParentHandlers(false);
+    parent.addHandler(new Handler() {
+
+      @Override
+      public void publish(final LogRecord record) {
+        records.add(record);
+        threads.add(Thread.currentThread().getName());
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+
+    final AsyncLogHandler handler = new AsyncLogHandler(100);
+    child.setUseParentHandlers(false);
+    child.addHandler(handler);
+    for (int i = 0; i < 10; i++) {
+      child.warning("row " + i);
+    }
+    while (handler.getPublished() < 10) {
+      Thread.sleep(1);
+    }
+
+    assertEquals(10, records.size());
+    assertEquals("row 9", records.get(9).getMessage());
+    assertEquals(AsyncLogHandlerTest.class.getName(), records.get(0).getSourceClassName());
+    assertFalse(threads.contains(Thread.currentThread().getName()));
+  }
+
+  @Test
+  public void testFullQueueDrops() throws Exception {
+    final Logger parent = Logger.getLogger("etl.Test.AsyncLogHandlerTest.full");
+    final Logger child = Logger.getLogger("etl.Test.AsyncLogHandlerTest.full.rows");
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    parent.setUseParentHandlers(false);
+    parent.addHandler(new Handler() {
+
+      @Override
+      public void publish(final LogRecord record) {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+
+    final AsyncLogHandler handler = new AsyncLogHandler(2);
+    child.setUseParentHandlers(false);
+    child.addHandler(handler);
+    child.warning("first");
+    blocked.await();
+    for (int i = 0; i < 5; i++) {
+      child.warning("row " + i);
+    }
+    assertEquals(3, handler.getDropped());
+    release.countDown();
+  }
+
+}
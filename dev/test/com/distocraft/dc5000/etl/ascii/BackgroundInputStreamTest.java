@@ -0,0 +1,85 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class BackgroundInputStreamTest {
+
+  @Test
+  public void testRead() throws Exception {
+    final byte[] data = GzipInputStreamTest.data(100000);
+    final InputStream in = new BackgroundInputStream(new ByteArrayInputStream(data), 1000);
+    assertTrue(Arrays.equals(data, GzipInputStreamTest.readAll(in)));
+    in.close();
+
+    final InputStream empty = new BackgroundInputStream(new ByteArrayInputStream(new byte[0]), 1000);
+    assertEquals(-1, empty.read());
+    assertEquals(-1, empty.read());
+    empty.close();
+  }
+
+  @Test
+  public void testErrorIsThrown() throws Exception {
+    final InputStream in = new BackgroundInputStream(new InputStream() {
+
+      private int count;
+
+      @Override
+      public int read() throws IOException {
+        if (++count > 10) {
+          throw new IOException("disk failure");
+        }
+        return 'a';
+      }
+    }, 4);
+    final byte[] buffer = new byte[4];
+    assertEquals(4, in.read(buffer));
+    assertEquals(4, in.read(buffer));
+    assertEquals(2, in.read(buffer));
+    for (int i = 0; i < 2; i++) {
+      try {
+        in.read(buffer);
+        fail("error not thrown");
+      } catch (final IOException e) {
+        assertEquals("disk failure", e.getCause().getMessage());
+      }
+    }
+    in.close();
+  }
+
+  @Test
+  public void testCloseStopsReading() throws Exception {
+    final AtomicBoolean closed = new AtomicBoolean();
+    final InputStream in = new BackgroundInputStream(new InputStream() {
+
+      @Override
+      public int read() {
+        return 'a';
+      }
+
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    }, 100);
+    assertEquals('a', in.read());
+    in.close();
+    assertTrue(closed.get());
+    try {
+      in.read();
+      fail("closed stream read");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+}
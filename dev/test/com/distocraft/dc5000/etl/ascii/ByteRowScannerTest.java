@@ -0,0 +1,193 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ByteRowScannerTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private File file;
+
+  @After
+  public void tearDown() {
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testReadRows() throws Exception {
+    assertRows(false, 16);
+    assertRows(false, 64 * 1024);
+  }
+
+  @Test
+  public void testMappedRows() throws Exception {
+    assertRows(true, 16);
+    assertRows(true, 64 * 1024);
+  }
+
+  @Test
+  public void testStreamRows() throws Exception {
+    writeFile(("\uFEFFh1|h2\nv1|\u00e4\u00f6\n\nlast").getBytes(UTF8));
+    final RowScanner rs = new ByteRowScanner(new FileInputStream(file), Delimiter.compile("\n"), -1, UTF8, 16);
+    assertEquals("h1|h2", rs.nextRow());
+    assertEquals("v1|\u00e4\u00f6", rs.nextRow());
+    assertEquals("", rs.nextRow());
+    assertEquals("last", rs.nextRow());
+    assertNull(rs.nextRow());
+    rs.close();
+  }
+
+  @Test
+  public void testConfiguredDelimiterSizeAtBufferEnd() throws Exception {
+    // buffer of 16 bytes ends with the \n of the first row, the \r removed with it is read later
+    writeFile("0123456789abcde\n\rnext\n\rlast".getBytes(UTF8));
+    final RowScanner[] scanners = { new ByteRowScanner(new FileInputStream(file), Delimiter.compile("\n"), 2, UTF8, 16),
+        new ByteRowScanner(new FileInputStream(file).getChannel(), Delimiter.compile("\n"), 2, UTF8, true, 16) };
+    for (RowScanner rs : scanners) {
+      assertEquals("0123456789abcde", rs.nextRow());
+      assertEquals("next", rs.nextRow());
+      assertEquals("last", rs.nextRow());
+      assertNull(rs.nextRow());
+      rs.close();
+    }
+  }
+
+  @Test
+  public void testGrownBufferIsNotPooled() throws Exception {
+    final byte[] longRow = new byte[4 * ByteRowScanner.MIN_READ_BUFFER_SIZE];
+    Arrays.fill(longRow, (byte) 'x');
+    writeFile(longRow);
+    final RowScanner rs = open("\n", false, ByteRowScanner.MIN_READ_BUFFER_SIZE);
+    assertEquals(longRow.length, rs.nextRow().length());
+    assertNull(rs.nextRow());
+    rs.close();
+    assertTrue(ByteRowScanner.getLargestPooled() < longRow.length);
+  }
+
+  @Test
+  public void testFieldSlices() throws Exception {
+    writeFile(("\uFEFFh1|h2\n v1 |\u00e4\u00f6\n\nlast").getBytes(UTF8));
+    final ByteRowScanner rs = new ByteRowScanner(new FileInputStream(file), Delimiter.compile("\n"), -1, UTF8, 16);
+    final FieldSlices row = new FieldSlices(Delimiter.compile("\\|"));
+    assertTrue(rs.nextRow(row));
+    assertEquals("h1|h2", row.toString());
+    assertTrue(rs.nextRow(row));
+    assertEquals(2, row.split());
+    assertEquals("v1", row.get(0));
+    assertEquals("\u00e4\u00f6", row.get(1));
+    assertTrue(rs.nextRow(row));
+    assertTrue(row.isBlank());
+    assertEquals("last", rs.nextRow());
+    assertTrue(!rs.nextRow(row));
+    rs.close();
+  }
+
+  @Test
+  public void testLatin1Rows() throws Exception {
+    final Charset latin1 = Charset.forName("ISO-8859-1");
+    writeFile(("abc\n\u00e4bc\n").getBytes(latin1));
+    final RowScanner rs = new ByteRowScanner(new FileInputStream(file), Delimiter.compile("\n"), -1, latin1, 16);
+    assertEquals("abc", rs.nextRow());
+    assertEquals("\u00e4bc", rs.nextRow());
+    assertNull(rs.nextRow());
+    rs.close();
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    writeFile(new byte[0]);
+    for (boolean mapped : new boolean[] { false, true }) {
+      final RowScanner rs = open("\n", mapped, 16);
+      assertEquals("", rs.nextRow());
+      assertNull(rs.nextRow());
+      rs.close();
+    }
+  }
+
+  @Test
+  public void testCreate() throws Exception {
+    writeFile("a\nb".getBytes(UTF8));
+    ByteRowScanner rs = ByteRowScanner.create(new FileInputStream(file), Delimiter.compile("\n"), -1, UTF8, ASCIIParser.INPUT_FROM_CHANNEL, 10000);
+    assertNotNull(rs);
+    rs.close();
+    rs = ByteRowScanner.create(new ByteArrayInputStream("a\nb".getBytes(UTF8)), Delimiter.compile("\n"), -1, UTF8, ASCIIParser.INPUT_FROM_MAPPED, 10000);
+    assertEquals("a", rs.nextRow());
+    rs.close();
+    rs = ByteRowScanner.create(new FileInputStream(file), Delimiter.compile("\\n"), -1, UTF8, ASCIIParser.INPUT_FROM_STREAM, 10000);
+    assertNotNull(rs);
+    rs.close();
+    assertNull(ByteRowScanner.create(new FileInputStream(file), Delimiter.compile("\\r?\\n"), -1, UTF8, ASCIIParser.INPUT_FROM_STREAM, 10000));
+    assertNull(ByteRowScanner.create(new FileInputStream(file), Delimiter.compile("\n"), -1, Charset.forName("UTF-16"), ASCIIParser.INPUT_FROM_STREAM, 10000));
+  }
+
+  @Test
+  public void testPosition() throws Exception {
+    writeFile("\uFEFFh1\nrow2\nrow3".getBytes(UTF8));
+    for (boolean mapped : new boolean[] { false, true }) {
+      final ByteRowScanner rs = new ByteRowScanner(new FileInputStream(file).getChannel(), Delimiter.compile("\n"), -1, UTF8, mapped, 4);
+      assertEquals("h1", rs.nextRow());
+      assertEquals(6, rs.position());
+      assertEquals("row2", rs.nextRow());
+      assertEquals(11, rs.position());
+      rs.close();
+    }
+
+    final FileInputStream in = new FileInputStream(file);
+    final ByteRowScanner rs = new ByteRowScanner(in.getChannel(), 8, Delimiter.compile("\n"), UTF8, 4);
+    assertEquals("w2", rs.nextRow());
+    assertEquals("row3", rs.nextRow());
+    assertNull(rs.nextRow());
+    rs.close();
+    assertTrue(in.getChannel().isOpen());
+    in.close();
+  }
+
+  private void assertRows(final boolean mapped, final int windowSize) throws Exception {
+    final StringBuilder longRow = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      longRow.append("x\u00e4");
+    }
+    writeFile(("\uFEFFh1|h2\r\nv1|\u00e4\u00f6\r\n" + longRow + "\r\n\r\nlast").getBytes(UTF8));
+
+    final RowScanner rs = open("\r\n", mapped, windowSize);
+    assertEquals("h1|h2", rs.nextRow());
+    assertEquals("v1|\u00e4\u00f6", rs.nextRow());
+    assertEquals(longRow.toString(), rs.nextRow());
+    assertEquals("", rs.nextRow());
+    assertEquals("last", rs.nextRow());
+    assertNull(rs.nextRow());
+    rs.close();
+  }
+
+  private RowScanner open(final String delimiter, final boolean mapped, final int windowSize) throws IOException {
+    return new ByteRowScanner(new FileInputStream(file).getChannel(), Delimiter.compile(delimiter), -1, UTF8, mapped, windowSize);
+  }
+
+  private void writeFile(final byte[] data) throws IOException {
+    tearDown();
+    file = File.createTempFile("ByteRowScannerTest", ".txt");
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ColumnPlanTest {
+
+  @Test
+  public void testKeysAndIndexes() {
+    final ColumnPlan plan = ColumnPlan.create(Arrays.asList(" A ", "time", "nodeFDN", "sourceType", "nodeType"),
+        ASCIIParser.DATATIME_FROM_COLUMN, "TIME", ASCIIParser.ROW_WIDTH_DEFAULT);
+
+    assertEquals(5, plan.getWidth());
+    assertEquals("A", plan.getKey(0));
+    assertEquals(1, plan.getDatetimeIndex());
+
+    final String[] row = { "1", "2", "fdn", "", "ERBS" };
+    assertEquals("fdn", plan.getNodeFdn(row, 5, null));
+    assertEquals("ERBS", plan.getNodeType(row, 5, ""));
+    assertEquals("old", plan.getNodeFdn(row, 2, "old"));
+  }
+
+  @Test
+  public void testEmptySourceTypeIsIgnored() {
+    final ColumnPlan plan = ColumnPlan.create(Arrays.asList("nodeType", "sourceType"), ASCIIParser.DATATIME_SKIPPED, "",
+        ASCIIParser.ROW_WIDTH_DEFAULT);
+    assertEquals(-1, plan.getDatetimeIndex());
+    assertEquals("RNC", plan.getNodeType(new String[] { "RNC", "" }, 2, ""));
+    assertEquals("ERBS", plan.getNodeType(new String[] { "RNC", "ERBS" }, 2, ""));
+  }
+
+  @Test
+  public void testRowWidthModes() {
+    ColumnPlan plan = ColumnPlan.create(Arrays.asList("A", "B", "C"), ASCIIParser.DATATIME_SKIPPED, "", ASCIIParser.ROW_WIDTH_DEFAULT);
+    assertEquals(3, plan.columnsToWrite(3));
+    assertEquals(2, plan.columnsToWrite(2));
+    assertEquals(-1, plan.columnsToWrite(4));
+
+    plan = ColumnPlan.create(Arrays.asList("A", "B", "C"), ASCIIParser.DATATIME_SKIPPED, "", ASCIIParser.ROW_WIDTH_STRICT);
+    assertEquals(3, plan.columnsToWrite(3));
+    assertEquals(-1, plan.columnsToWrite(2));
+    assertEquals(-1, plan.columnsToWrite(4));
+
+    plan = ColumnPlan.create(Arrays.asList("A", "B", "C"), ASCIIParser.DATATIME_SKIPPED, "", ASCIIParser.ROW_WIDTH_TRUNCATE);
+    assertEquals(2, plan.columnsToWrite(2));
+    assertEquals(3, plan.columnsToWrite(4));
+  }
+
+  @Test
+  public void testPositionalKeys() {
+    final ColumnPlan plan = ColumnPlan.create(null, ASCIIParser.DATATIME_FROM_COLUMN, "2", ASCIIParser.ROW_WIDTH_STRICT);
+    assertEquals(-1, plan.getWidth());
+    assertEquals(-1, plan.getDatetimeIndex());
+    assertEquals(4, plan.columnsToWrite(4));
+    assertEquals("3", plan.getKey(3));
+    assertEquals(2, plan.getDatetimeIndex());
+    assertEquals(1, plan.columnsToWrite(1));
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ColumnWidthsTest {
+
+  @Test
+  public void testParse() {
+    final ColumnWidths widths = ColumnWidths.parse(" 10, 5,8");
+    assertEquals(3, widths.size());
+    assertEquals(5, widths.getWidth(1));
+    assertEquals("10,5,8", widths.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroWidth() {
+    ColumnWidths.parse("10,0");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testInvalidWidth() {
+    ColumnWidths.parse("10,x");
+  }
+
+  @Test
+  public void testSplit() {
+    final ColumnWidths widths = ColumnWidths.parse("4,3,5");
+    assertEquals(Arrays.asList("ERBS", "  1", "  200"), Arrays.asList(widths.split("ERBS  1  200")));
+    // padding after the last column is ignored
+    assertEquals(Arrays.asList("ERBS", "  1", "  200"), Arrays.asList(widths.split("ERBS  1  200   ")));
+    // text after the last column is an extra column
+    assertEquals(Arrays.asList("ERBS", "  1", "  200", "x"), Arrays.asList(widths.split("ERBS  1  200x")));
+    // short rows have fewer columns
+    assertEquals(Arrays.asList("ERBS", "  1"), Arrays.asList(widths.split("ERBS  1")));
+    assertEquals(Arrays.asList("ERBS", " "), Arrays.asList(widths.split("ERBS ")));
+    assertEquals(Arrays.asList(""), Arrays.asList(widths.split("")));
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class DelimiterTest {
+
+  private static final String[] LINES = { "", "a", "a|b|c", "|a|b", "a||b", "a|b||", "||", "|", "a|b| ", "a\tb\t\tc", "x;;y;;",
+      ";;", "a\r\nb\r\n", "a b  c", "1.5.7" };
+
+  @Test
+  public void testClassification() {
+    assertEquals(Delimiter.LITERAL_CHAR, Delimiter.compile("\t").getType());
+    assertEquals(Delimiter.LITERAL_CHAR, Delimiter.compile("\\|").getType());
+    assertEquals(Delimiter.LITERAL_CHAR, Delimiter.compile("\\t").getType());
+    assertEquals(Delimiter.LITERAL_CHAR, Delimiter.compile(";").getType());
+    assertEquals(Delimiter.LITERAL_STRING, Delimiter.compile("\r\n").getType());
+    assertEquals(Delimiter.LITERAL_STRING, Delimiter.compile("\\r\\n").getType());
+    assertEquals(Delimiter.LITERAL_STRING, Delimiter.compile(";;").getType());
+    assertEquals(Delimiter.REGEX, Delimiter.compile("\\s+").getType());
+    assertEquals(Delimiter.REGEX, Delimiter.compile("|").getType());
+    assertEquals(Delimiter.REGEX, Delimiter.compile("\\r?\\n").getType());
+    assertEquals(Delimiter.REGEX, Delimiter.compile("[,;]").getType());
+    assertEquals(Delimiter.REGEX, Delimiter.compile(".").getType());
+  }
+
+  @Test
+  public void testToLiteral() {
+    assertEquals("|", Delimiter.toLiteral("\\|"));
+    assertEquals("\r\n", Delimiter.toLiteral("\\r\\n"));
+    assertEquals("\t", Delimiter.toLiteral("\\t"));
+    assertEquals("a.b", Delimiter.toLiteral("a\\.b"));
+    assertNull(Delimiter.toLiteral("\\d"));
+    assertNull(Delimiter.toLiteral("\\"));
+    assertNull(Delimiter.toLiteral(""));
+    assertNull(Delimiter.toLiteral(null));
+  }
+
+  @Test
+  public void testSplitIsSameAsStringSplit() {
+    final String[] expressions = { "\\|", "|", "\t", "\\t", ";;", "\r\n", "\\r\\n", " ", " +", "\\.", "." };
+    for (String expression : expressions) {
+      final Delimiter delimiter = Delimiter.compile(expression);
+      for (String line : LINES) {
+        assertArrayEquals("'" + line + "' split with '" + expression + "'", line.split(expression), delimiter.split(line));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,173 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+public class DiagnosticsTest {
+
+  @Test
+  public void testSampling() {
+    final Logger log = Logger.getLogger("etl.Test.DiagnosticsTest.sampling");
+    final Diagnostics diagnostics = new Diagnostics(log, 3, 10, 0);
+    final List<LogRecord> records = capture(diagnostics.getRowLog());
+
+    diagnostics.fileStarted();
+    for (int i = 0; i < 25; i++) {
+      diagnostics.rowSkipped(RejectReason.WRITE_FAILED, i, -1, "a|b", new NumberFormatException("b"));
+    }
+    diagnostics.rowSkipped(RejectReason.WIDER_THAN_HEADER, 25, -1, "a|b|c", null);
+    assertEquals(25, diagnostics.getSkipped(RejectReason.WRITE_FAILED));
+
+    // first with stack trace, two without, then every 10th
+    assertEquals(3 + 2 + 1, records.size());
+    assertNotNull(records.get(0).getThrown());
+    assertNull(records.get(1).getThrown());
+    assertTrue(records.get(1).getMessage(), records.get(1).getMessage().endsWith("a|b java.lang.NumberFormatException: b"));
+    assertTrue(records.get(3).getMessage(), records.get(3).getMessage().contains("skipping(9)"));
+    assertTrue(records.get(3).getMessage(), records.get(3).getMessage().endsWith("10 rows skipped for this reason so far"));
+    assertTrue(records.get(5).getMessage(), records.get(5).getMessage().contains("WIDER_THAN_HEADER"));
+
+    records.clear();
+    diagnostics.fileFinished("file1");
+    assertEquals(1, records.size());
+    assertEquals("Rows skipped in file1: WIDER_THAN_HEADER 1, WRITE_FAILED 25", records.get(0).getMessage());
+    assertEquals(0, diagnostics.getSkipped(RejectReason.WRITE_FAILED));
+  }
+
+  @Test
+  public void testNothingBuiltWhenDisabled() {
+    final Logger log = Logger.getLogger("etl.Test.DiagnosticsTest.disabled");
+    log.setLevel(Level.SEVERE);
+    final Diagnostics diagnostics = new Diagnostics(log, 1, 1, 0);
+    final List<LogRecord> records = capture(diagnostics.getRowLog());
+    diagnostics.fileStarted();
+    assertFalse(diagnostics.isTracing());
+    for (int i = 0; i < 5; i++) {
+      diagnostics.rowSkipped(RejectReason.INVALID_ROW, i, -1, "line", null);
+    }
+    assertTrue(records.isEmpty());
+    assertEquals(5, diagnostics.getSkipped(RejectReason.INVALID_ROW));
+
+    log.setLevel(Level.FINEST);
+    assertFalse(diagnostics.isTracing());
+    diagnostics.fileStarted();
+    assertTrue(diagnostics.isTracing());
+  }
+
+  @Test
+  public void testRejectFile() throws Exception {
+    final File dir = Files.createTempDirectory("DiagnosticsTest").toFile();
+    try {
+      final Logger log = Logger.getLogger("etl.Test.DiagnosticsTest.reject");
+      final Diagnostics diagnostics = new Diagnostics(log, 1, 1000, 0);
+      final List<LogRecord> records = capture(diagnostics.getRowLog());
+
+      diagnostics.fileStarted(dir, "clean.txt");
+      diagnostics.fileFinished("clean.txt");
+      assertFalse(new File(dir, "clean.txt" + RejectFile.SUFFIX).exists());
+      assertTrue(records.isEmpty());
+
+      diagnostics.fileStarted(dir, "bad.txt");
+      diagnostics.rowSkipped(RejectReason.NARROWER_THAN_HEADER, 3, 120, "a|b", null);
+      diagnostics.rowSkipped(RejectReason.WRITE_FAILED, 7, 200, "x\ry", new IllegalStateException());
+      diagnostics.fileFinished("bad.txt");
+
+      final File file = new File(dir, "bad.txt" + RejectFile.SUFFIX);
+      final List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+      assertEquals(Arrays.asList(RejectFile.HEADER, "3\t120\tNARROWER_THAN_HEADER\ta|b", "7\t200\tWRITE_FAILED\tx\\ry"), lines);
+      final String summary = records.get(records.size() - 1).getMessage();
+      assertTrue(summary, summary.startsWith("Rows skipped in bad.txt: NARROWER_THAN_HEADER 1, WRITE_FAILED 1, rows written to "));
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testRowReadOnlyWhenNeeded() throws Exception {
+    final List<Long> read = new ArrayList<Long>();
+    final Diagnostics.RowSource source = new Diagnostics.RowSource() {
+
+      @Override
+      public String readRow(final long offset) {
+        read.add(offset);
+        return "row" + offset;
+      }
+    };
+    final Logger log = Logger.getLogger("etl.Test.DiagnosticsTest.source");
+    final Diagnostics diagnostics = new Diagnostics(log, 2, 10, 0);
+    final List<LogRecord> records = capture(diagnostics.getRowLog());
+
+    // only the logged rows are read again
+    diagnostics.fileStarted();
+    for (int i = 0; i < 20; i++) {
+      diagnostics.rowSkipped(RejectReason.INVALID_ROW, i, i * 10, null, source, null);
+    }
+    assertEquals(Arrays.asList(0L, 10L, 90L, 190L), read);
+    assertTrue(records.get(0).getMessage(), records.get(0).getMessage().endsWith(": row0"));
+    diagnostics.fileFinished("file1");
+
+    // a known line is not read
+    read.clear();
+    diagnostics.fileStarted();
+    diagnostics.rowSkipped(RejectReason.INVALID_ROW, 0, 0, "line", source, null);
+    assertTrue(read.isEmpty());
+    diagnostics.fileFinished("file2");
+
+    // every row written to the reject file is read
+    final File dir = Files.createTempDirectory("DiagnosticsTest").toFile();
+    try {
+      diagnostics.fileStarted(dir, "bad.txt");
+      for (int i = 0; i < 5; i++) {
+        diagnostics.rowSkipped(RejectReason.INVALID_ROW, i, i, null, source, null);
+      }
+      diagnostics.fileFinished("bad.txt");
+      assertEquals(5, read.size());
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  private static List<LogRecord> capture(final Logger logger) {
+    final List<LogRecord> records = new ArrayList<LogRecord>();
+    logger.setUseParentHandlers(false);
+    logger.addHandler(new Handler() {
+
+      @Override
+      public void publish(final LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    return records;
+  }
+
+}
@@ -0,0 +1,116 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FieldSlicesTest {
+
+  @Test
+  public void testSameFieldsAsSplit() {
+    final String[] rows = { "", "a", "a|b", "|a", "a|", "a||", "||", "|", " a | b |c ", "a||b|||c|", "\u00e4|\u00f6" };
+    final Delimiter delimiter = Delimiter.compile("\\|");
+    final FieldSlices slices = new FieldSlices(delimiter);
+    for (String row : rows) {
+      set(slices, row);
+      assertEquals(row, Arrays.asList(delimiter.split(row)), fields(slices));
+    }
+
+    final Delimiter string = Delimiter.compile(";;");
+    final FieldSlices stringSlices = new FieldSlices(string);
+    for (String row : new String[] { "a;;b", "a;;;b", ";;;;", "a;b;;c;;" }) {
+      set(stringSlices, row);
+      assertEquals(row, Arrays.asList(string.split(row)), fields(stringSlices));
+    }
+  }
+
+  @Test
+  public void testSameFieldsAsColumnWidths() {
+    final ColumnWidths widths = ColumnWidths.parse("3,2,4");
+    final FieldSlices slices = new FieldSlices(widths);
+    for (String row : new String[] { "", "a", "abc", "abcde", "abcdefghi", "abcdefghi   ", "abcdefghijk", "ab cd ef  x" }) {
+      set(slices, row);
+      assertEquals(row, Arrays.asList(widths.split(row)), fields(slices));
+    }
+  }
+
+  @Test
+  public void testTrimmedValues() {
+    final FieldSlices slices = new FieldSlices(Delimiter.compile("\t"));
+    set(slices, "  a b \t\t 1\r");
+    assertEquals(3, slices.split());
+    assertEquals("a b", slices.get(0));
+    assertEquals("", slices.get(1));
+    assertEquals("1", slices.get(2));
+    assertEquals(0, slices.start(0));
+    assertEquals(6, slices.end(0));
+    assertFalse(slices.isBlank());
+
+    set(slices, " \t \r");
+    assertTrue(slices.isBlank());
+  }
+
+  @Test
+  public void testDictionaryValues() {
+    final ValueDictionary dictionary = new ValueDictionary(16);
+    final FieldSlices slices = new FieldSlices(Delimiter.compile("\t"));
+    set(slices, " ERBS \t0");
+    slices.split();
+    final String type = slices.get(0, dictionary);
+    assertEquals("ERBS", type);
+    set(slices, "0\tERBS");
+    slices.split();
+    assertSame(type, slices.get(1, dictionary));
+    assertEquals("0", slices.get(0, dictionary));
+  }
+
+  @Test
+  public void testManyFields() {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      sb.append(i).append('|');
+    }
+    final FieldSlices slices = new FieldSlices(Delimiter.compile("\\|"));
+    set(slices, sb.toString());
+    assertEquals(3000, slices.split());
+    assertEquals("2999", slices.get(2999));
+  }
+
+  @Test
+  public void testCharSequence() {
+    final FieldSlices slices = new FieldSlices(Delimiter.compile("\\|"));
+    set(slices, "ab|cd");
+    assertEquals(5, slices.length());
+    assertEquals('c', slices.charAt(3));
+    assertEquals("cd", slices.subSequence(3, 5).toString());
+    assertEquals("ab|cd", slices.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegexDelimiter() {
+    new FieldSlices(Delimiter.compile("\\s*\\|"));
+  }
+
+  private static void set(final FieldSlices slices, final String row) {
+    final char[] chars = slices.buffer(row.length());
+    row.getChars(0, row.length(), chars, 0);
+    slices.setLength(row.length());
+  }
+
+  private static List<String> fields(final FieldSlices slices) {
+    final List<String> result = new ArrayList<String>();
+    final int size = slices.split();
+    for (int i = 0; i < size; i++) {
+      result.add(slices.subSequence(slices.start(i), slices.end(i)).toString());
+    }
+    return result;
+  }
+
+}
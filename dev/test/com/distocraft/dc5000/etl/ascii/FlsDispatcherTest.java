@@ -0,0 +1,203 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FlsDispatcherTest {
+
+  private FlsDispatcher dispatcher;
+
+  @After
+  public void tearDown() {
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  @Test
+  public void testNotificationsAreSent() throws Exception {
+    final List<FlsNotification> sent = new CopyOnWriteArrayList<FlsNotification>();
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) {
+        sent.add(notification);
+      }
+    }, 2, 10, 0, 0, 1);
+
+    assertTrue(dispatcher.submit(new FlsNotification("ERBS", "fdn1", "host")));
+    assertTrue(dispatcher.submit(new FlsNotification("ERBS", "fdn2", "host")));
+
+    waitFor(dispatcher, 2);
+    assertEquals(2, sent.size());
+    assertEquals(0, dispatcher.getDropped());
+  }
+
+  @Test
+  public void testPendingDuplicatesAreCoalescedAndFullQueueDrops() throws Exception {
+    final CountDownLatch block = new CountDownLatch(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) throws Exception {
+        started.countDown();
+        block.await();
+      }
+    }, 1, 1, 0, 0, 1);
+
+    // first one is taken by the sending thread, which then blocks
+    assertTrue(dispatcher.submit(new FlsNotification("ERBS", "fdn0", "host")));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    assertTrue(dispatcher.submit(new FlsNotification("ERBS", "fdn1", "host")));
+    assertTrue(dispatcher.submit(new FlsNotification("ERBS", "fdn1", "host")));
+    assertFalse(dispatcher.submit(new FlsNotification("ERBS", "fdn2", "host")));
+
+    assertEquals(4, dispatcher.getSubmitted());
+    assertEquals(1, dispatcher.getCoalesced());
+    assertEquals(1, dispatcher.getDropped());
+    assertEquals(1, dispatcher.getQueueLength());
+
+    block.countDown();
+    waitFor(dispatcher, 2);
+  }
+
+  @Test
+  public void testNotificationsOfFileWaitForFullQueueOnce() throws Exception {
+    final CountDownLatch block = new CountDownLatch(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) throws Exception {
+        started.countDown();
+        block.await();
+      }
+    }, 1, 1, 200, 0, 1);
+
+    assertTrue(dispatcher.submit(new FlsNotification("ERBS", "fdn0", "host")));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    final long start = System.nanoTime();
+    assertEquals(3, dispatcher.submitAll(Arrays.asList(new FlsNotification("ERBS", "fdn1", "host"), new FlsNotification("ERBS", "fdn2",
+        "host"), new FlsNotification("ERBS", "fdn3", "host"), new FlsNotification("ERBS", "fdn4", "host"))));
+    final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    // waiting for every one would take 600 ms
+    assertTrue(Long.toString(waited), waited >= 190 && waited < 600);
+    assertEquals(3, dispatcher.getDropped());
+
+    block.countDown();
+    waitFor(dispatcher, 2);
+  }
+
+  @Test
+  public void testFailedSendIsRetried() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) throws Exception {
+        if (calls.incrementAndGet() < 3) {
+          throw new Exception("engine not available");
+        }
+      }
+    }, 1, 10, 0, 3, 1);
+
+    dispatcher.submit(new FlsNotification("ERBS", "fdn1", "host"));
+
+    waitFor(dispatcher, 1);
+    assertEquals(3, calls.get());
+    assertEquals(2, dispatcher.getRetried());
+    assertEquals(0, dispatcher.getFailed());
+  }
+
+  @Test
+  public void testRetriesAreSentBySendingThreads() throws Exception {
+    final List<String> threads = new CopyOnWriteArrayList<String>();
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) throws Exception {
+        threads.add(Thread.currentThread().getName());
+        if (threads.size() < 3) {
+          throw new Exception("engine not available");
+        }
+      }
+    }, 2, 10, 0, 3, 1);
+
+    dispatcher.submit(new FlsNotification("ERBS", "fdn1", "host"));
+
+    waitFor(dispatcher, 1);
+    assertEquals(3, threads.size());
+    for (String thread : threads) {
+      assertTrue(thread, thread.matches("ASCIIParser-FLS-\\d+"));
+    }
+  }
+
+  @Test
+  public void testRetryDoesNotHoldUpOtherNotifications() throws Exception {
+    final List<FlsNotification> sent = new CopyOnWriteArrayList<FlsNotification>();
+    final FlsNotification failing = new FlsNotification("ERBS", "fdn1", "host");
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) throws Exception {
+        if (notification.equals(failing)) {
+          throw new Exception("engine not available");
+        }
+        sent.add(notification);
+      }
+    }, 1, 10, 0, 1, 60000);
+
+    dispatcher.submit(failing);
+    dispatcher.submit(new FlsNotification("ERBS", "fdn2", "host"));
+
+    // the only sending thread is not waiting for the retry of the first one
+    waitFor(dispatcher, 1);
+    assertEquals(1, dispatcher.getRetried());
+    assertEquals(0, dispatcher.getFailed());
+    assertEquals("fdn2", sent.get(0).getNodeFDN());
+  }
+
+  @Test
+  public void testGivesUpAfterRetries() throws Exception {
+    dispatcher = new FlsDispatcher(new FlsDispatcher.Sender() {
+
+      @Override
+      public void send(final FlsNotification notification) throws Exception {
+        throw new Exception("engine not available");
+      }
+    }, 1, 10, 0, 1, 1);
+
+    dispatcher.submit(new FlsNotification("ERBS", "fdn1", "host"));
+
+    final long end = System.currentTimeMillis() + 5000;
+    while (dispatcher.getFailed() == 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, dispatcher.getFailed());
+    assertEquals(1, dispatcher.getRetried());
+    assertEquals(0, dispatcher.getSent());
+  }
+
+  private static void waitFor(final FlsDispatcher dispatcher, final long sent) throws InterruptedException {
+    final long end = System.currentTimeMillis() + 5000;
+    while (dispatcher.getSent() < sent && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    assertEquals(sent, dispatcher.getSent());
+  }
+
+}
@@ -0,0 +1,146 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class GzipInputStreamTest {
+
+  @Test
+  public void testDecompress() throws Exception {
+    final byte[] data = data(300000);
+    final InputStream in = GzipInputStream.open(new ByteArrayInputStream(gzip(data)), false);
+    assertTrue(in instanceof GzipInputStream);
+    assertTrue(Arrays.equals(data, readAll(in)));
+    in.close();
+  }
+
+  @Test
+  public void testConcatenatedMembers() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(gzip("a|b\n".getBytes("UTF-8")));
+    out.write(gzip(new byte[0]));
+    out.write(gzip("c|d\n".getBytes("UTF-8")));
+    final InputStream in = GzipInputStream.open(new ByteArrayInputStream(out.toByteArray()), false);
+    assertEquals("a|b\nc|d\n", new String(readAll(in), "UTF-8"));
+    in.close();
+  }
+
+  @Test
+  public void testHeaderFields() throws Exception {
+    // FEXTRA, FNAME and FCOMMENT set
+    final byte[] deflated = gzip("x".getBytes("UTF-8"));
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4 | 8 | 16, 0, 0, 0, 0, 0, 0, 2, 0, 'e', 'x' });
+    out.write("name.txt\0comment\0".getBytes("UTF-8"));
+    out.write(deflated, 10, deflated.length - 10);
+    final InputStream in = GzipInputStream.open(new ByteArrayInputStream(out.toByteArray()), false);
+    assertEquals("x", new String(readAll(in), "UTF-8"));
+    in.close();
+  }
+
+  @Test
+  public void testPlainStreamsAreNotWrapped() throws Exception {
+    final File file = File.createTempFile("GzipInputStreamTest", ".txt");
+    try {
+      Files.write(file.toPath(), "\u001fplain".getBytes("UTF-8"));
+      final FileInputStream fileIn = new FileInputStream(file);
+      try {
+        assertSame(fileIn, GzipInputStream.open(fileIn, false));
+        assertEquals(0x1f, fileIn.read());
+      } finally {
+        fileIn.close();
+      }
+    } finally {
+      file.delete();
+    }
+
+    final ByteArrayInputStream bytes = new ByteArrayInputStream("h\n1\n".getBytes("UTF-8"));
+    assertSame(bytes, GzipInputStream.open(bytes, false));
+    assertEquals("h\n1\n", new String(readAll(bytes), "UTF-8"));
+
+    // stream without mark support
+    final InputStream plain = GzipInputStream.open(new FilterInputStream(new ByteArrayInputStream("h".getBytes("UTF-8"))) {
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    }, false);
+    assertEquals("h", new String(readAll(plain), "UTF-8"));
+  }
+
+  @Test
+  public void testCorruptData() throws Exception {
+    final byte[] compressed = gzip(data(1000));
+    // CRC of the trailer
+    compressed[compressed.length - 8] ^= 1;
+    try {
+      readAll(GzipInputStream.open(new ByteArrayInputStream(compressed), false));
+      fail("corrupt CRC accepted");
+    } catch (final IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("CRC"));
+    }
+
+    final byte[] truncated = Arrays.copyOf(gzip(data(1000)), 30);
+    try {
+      readAll(GzipInputStream.open(new ByteArrayInputStream(truncated), false));
+      fail("truncated data accepted");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBackground() throws Exception {
+    final byte[] data = data(500000);
+    final InputStream in = GzipInputStream.open(new ByteArrayInputStream(gzip(data)), true);
+    assertTrue(in instanceof BackgroundInputStream);
+    assertTrue(Arrays.equals(data, readAll(in)));
+    in.close();
+  }
+
+  static byte[] data(final int size) {
+    final Random random = new Random(size);
+    final StringBuilder sb = new StringBuilder(size);
+    while (sb.length() < size) {
+      sb.append(random.nextInt(1000)).append(sb.length() % 10 == 0 ? '\n' : '|');
+    }
+    return sb.toString().getBytes();
+  }
+
+  static byte[] gzip(final byte[] data) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(data);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  static byte[] readAll(final InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[7000];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    assertEquals(-1, in.read());
+    return out.toByteArray();
+  }
+
+}
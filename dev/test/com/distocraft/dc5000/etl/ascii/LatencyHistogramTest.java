@@ -0,0 +1,43 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (long v = 0; v < 100000; v++) {
+      final int i = LatencyHistogram.index(v);
+      assertTrue(v + " in " + i, LatencyHistogram.highestValue(i) >= v);
+      assertTrue(v + " in " + i, i == 0 || LatencyHistogram.highestValue(i - 1) < v);
+    }
+    final long[] values = { 1L << 20, 123456789L, 1L << 40, Long.MAX_VALUE };
+    for (long v : values) {
+      final long high = LatencyHistogram.highestValue(LatencyHistogram.index(v));
+      assertTrue(v + " " + high, high >= v && (high - v) <= v / 64);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram h = new LatencyHistogram();
+    assertEquals(0, h.getValueAtPercentile(99));
+    for (int i = 1; i <= 1000; i++) {
+      h.record(i * 1000L);
+    }
+    assertEquals(1000, h.getCount());
+    assertEquals(500500, h.getMean());
+    assertWithin(500000, h.getValueAtPercentile(50));
+    assertWithin(990000, h.getValueAtPercentile(99));
+    assertWithin(1000000, h.getMax());
+    assertWithin(1000, h.getValueAtPercentile(0));
+  }
+
+  private static void assertWithin(final long expected, final long actual) {
+    assertTrue(expected + " " + actual, actual >= expected && actual - expected <= expected / 64);
+  }
+
+}
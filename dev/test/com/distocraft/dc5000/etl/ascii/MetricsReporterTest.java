@@ -0,0 +1,51 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class MetricsReporterTest {
+
+  @Test
+  public void testRecord() {
+    final MetricsReporter reporter = new MetricsReporter("");
+    final ParserStats stats = new ParserStats("type=ASCIIParser,techPack=TP,set=SET");
+    assertNull(reporter.record(stats, 60000));
+
+    for (int i = 1; i <= 100; i++) {
+      stats.fileStarted();
+      stats.fileFinished(1000, 10, i * 1000000L);
+    }
+    final String record = reporter.record(stats, 10000);
+    assertTrue(record, record.startsWith("type=ASCIIParser techPack=TP set=SET intervalSeconds=10 files=100 rows=0 bytes=100000"));
+    assertTrue(record, record.contains(" bytesPerSecond=10000 "));
+    assertTrue(record, record.contains(" fileMsP50=50 "));
+    assertTrue(record, record.contains(" fileMsP99=99 "));
+    assertTrue(record, record.contains(" fileMsMax=100 "));
+
+    // next interval starts empty
+    assertNull(reporter.record(stats, 10000));
+    stats.fileStarted();
+    stats.fileFinished(1, 1, 2000000L);
+    final String next = reporter.record(stats, 10000);
+    assertTrue(next, next.contains(" files=1 rows=0 bytes=1 ") && next.contains(" fileMsP99=2 "));
+  }
+
+  @Test
+  public void testMetricsFile() throws Exception {
+    final File file = File.createTempFile("metrics", ".log");
+    file.deleteOnExit();
+    final ParserStats stats = ParserStats.getInstance("MetricsReporterTest", "set", "");
+    stats.fileStarted();
+    stats.fileFinished(10, 1, 1000);
+
+    new MetricsReporter(file.getPath()).report();
+    final String content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    assertTrue(content, content.contains("techPack=MetricsReporterTest set=set intervalSeconds="));
+  }
+
+}
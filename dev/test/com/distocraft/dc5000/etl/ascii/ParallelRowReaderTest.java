@@ -0,0 +1,162 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelRowReaderTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private File file;
+
+  @After
+  public void tearDown() {
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testCanSplit() {
+    assertTrue(ParallelRowReader.canSplit(Delimiter.compile("\n"), -1, UTF8));
+    assertTrue(ParallelRowReader.canSplit(Delimiter.compile("\r\n"), 2, UTF8));
+    assertFalse(ParallelRowReader.canSplit(Delimiter.compile("\r\n"), 1, UTF8));
+    assertFalse(ParallelRowReader.canSplit(Delimiter.compile("||"), -1, UTF8));
+    assertFalse(ParallelRowReader.canSplit(Delimiter.compile("\\r?\\n"), -1, UTF8));
+    assertFalse(ParallelRowReader.canSplit(Delimiter.compile("\n"), -1, Charset.forName("UTF-16")));
+  }
+
+  @Test
+  public void testOrderedChunks() throws Exception {
+    final String data = createData("\r\n");
+    for (int chunkSize = 3; chunkSize < 40; chunkSize++) {
+      assertEquals("chunk size " + chunkSize, expectedRows(data, "\r\n"), readRows("\r\n", chunkSize, true));
+    }
+  }
+
+  @Test
+  public void testUnorderedChunks() throws Exception {
+    final String data = createData("\n");
+    final List<String> expected = expectedRows(data, "\n");
+    Collections.sort(expected);
+    for (int chunkSize = 2; chunkSize < 40; chunkSize += 5) {
+      final List<String> rows = readRows("\n", chunkSize, false);
+      Collections.sort(rows);
+      assertEquals(expected, rows);
+    }
+  }
+
+  @Test
+  public void testColumnsAreSplit() throws Exception {
+    writeFile("h\na|b\n\nc|d|e\n");
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      final ParallelRowReader reader = new ParallelRowReader(in.getChannel(), 2, Delimiter.compile("\n"), Delimiter.compile("\\|"), UTF8, 4,
+          1024, 16, true);
+      final List<String[]> rows = new ArrayList<String[]>();
+      final List<Long> offsets = new ArrayList<Long>();
+      ParallelRowReader.Chunk chunk;
+      while ((chunk = reader.next()) != null) {
+        for (int i = 0; i < chunk.size(); i++) {
+          rows.add(chunk.getRow(i));
+          offsets.add(chunk.getOffset(i));
+        }
+      }
+      assertEquals(3, rows.size());
+      assertEquals(Arrays.asList(2L, 6L, 7L), offsets);
+      assertArrayEquals(new String[] { "a", "b" }, rows.get(0));
+      assertNull(rows.get(1));
+      assertArrayEquals(new String[] { "c", "d", "e" }, rows.get(2));
+      // lines are read again from the offsets
+      assertEquals("c|d|e", reader.readRow(offsets.get(2)));
+      assertEquals("", reader.readRow(offsets.get(1)));
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testMemoryBudget() throws Exception {
+    createData("\n");
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      final Delimiter delimiter = Delimiter.compile("\n");
+      assertEquals(1, new ParallelRowReader(in.getChannel(), 0, delimiter, delimiter, UTF8, 100, 0, 16, true).getMaxInFlight());
+      assertEquals(2, new ParallelRowReader(in.getChannel(), 0, delimiter, delimiter, UTF8, 100, 399, 16, true).getMaxInFlight());
+      final int threads = ParallelRowReader.getPool().getParallelism();
+      assertEquals(threads * 2, new ParallelRowReader(in.getChannel(), 0, delimiter, delimiter, UTF8, 100, Long.MAX_VALUE, 16, true)
+          .getMaxInFlight());
+    } finally {
+      in.close();
+    }
+  }
+
+  private String createData(final String delimiter) throws IOException {
+    final StringBuilder sb = new StringBuilder("header").append(delimiter);
+    for (int i = 0; i < 50; i++) {
+      for (int j = 0; j < i % 7; j++) {
+        sb.append((char) ('a' + j));
+      }
+      sb.append(i).append(delimiter);
+    }
+    sb.append("tail");
+    writeFile(sb.toString());
+    return sb.toString();
+  }
+
+  private List<String> expectedRows(final String data, final String delimiter) {
+    final List<String> rows = new ArrayList<String>();
+    for (String row : data.substring(data.indexOf(delimiter) + delimiter.length()).split(delimiter, -1)) {
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  private List<String> readRows(final String delimiter, final int chunkSize, final boolean ordered) throws IOException {
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      final ParallelRowReader reader = new ParallelRowReader(in.getChannel(), ("header" + delimiter).length(), Delimiter.compile(delimiter),
+          Delimiter.compile("\\|"), UTF8, chunkSize, chunkSize * 3, 16, ordered);
+      final List<String> rows = new ArrayList<String>();
+      ParallelRowReader.Chunk chunk;
+      while ((chunk = reader.next()) != null) {
+        for (int i = 0; i < chunk.size(); i++) {
+          final String[] row = chunk.getRow(i);
+          rows.add(row == null ? "" : row[0]);
+        }
+      }
+      reader.close();
+      return rows;
+    } finally {
+      in.close();
+    }
+  }
+
+  private void writeFile(final String data) throws IOException {
+    tearDown();
+    file = File.createTempFile("ParallelRowReaderTest", ".txt");
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data.getBytes(UTF8));
+    } finally {
+      out.close();
+    }
+  }
+
+}
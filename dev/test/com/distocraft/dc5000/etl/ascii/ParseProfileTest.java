@@ -0,0 +1,115 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ssc.rockfactory.RockFactory;
+
+import com.distocraft.dc5000.etl.parser.ParseSession;
+import com.distocraft.dc5000.etl.parser.ParserDebugger;
+import com.distocraft.dc5000.etl.parser.SourceFile;
+
+public class ParseProfileTest {
+
+  private static final Logger LOG = Logger.getLogger("etl.Test");
+
+  private Properties prop;
+
+  @Before
+  public void setUp() {
+    ParseProfile.clearCache();
+    prop = new Properties();
+    prop.setProperty("column_delimiter", "\\|");
+    prop.setProperty("data_id_mode", "1");
+    prop.setProperty("header_row", "A|B|C");
+    prop.setProperty("datatime_mode", "2");
+    prop.setProperty("datatime_column", "_(\\d+)\\.txt");
+    prop.setProperty("writeForEach", "X,Y");
+  }
+
+  @Test
+  public void testProfileIsCached() throws Exception {
+    final ParseProfile p1 = ParseProfile.getProfile(createSourceFile("f1.txt"), "tp", "st", "sn", LOG);
+    final ParseProfile p2 = ParseProfile.getProfile(createSourceFile("f2.txt"), "tp", "st", "sn", LOG);
+    assertSame(p1, p2);
+    assertEquals(1, ParseProfile.cacheSize());
+
+    final ParseProfile p3 = ParseProfile.getProfile(createSourceFile("f3.txt"), "tp", "st", "other", LOG);
+    assertNotSame(p1, p3);
+
+    prop.setProperty("header_row", "A|B|D");
+    final ParseProfile p4 = ParseProfile.getProfile(createSourceFile("f4.txt"), "tp", "st", "sn", LOG);
+    assertNotSame(p1, p4);
+    assertEquals(3, ParseProfile.cacheSize());
+  }
+
+  @Test
+  public void testProfileValues() throws Exception {
+    final ParseProfile p = ParseProfile.getProfile(createSourceFile("f1.txt"), "tp", "st", "sn", LOG);
+    assertEquals(Delimiter.LITERAL_CHAR, p.getColDelimiter().getType());
+    assertEquals("\n", p.getRowDelim());
+    assertEquals(ASCIIParser.TAGID_FROM_FILENAME, p.getTagIDMode());
+    assertNotNull(p.getTagPattern());
+    assertEquals(Arrays.asList("A", "B", "C"), p.getConfiguredHeader());
+    assertNotNull(p.getTimePattern());
+    assertNull(p.getFileNamePattern());
+    assertTrue(p.getWriteForEachColumns().contains("Y"));
+    assertEquals(10000, p.getBufferSize());
+    assertEquals(-1, p.getRowDelimLength());
+    assertEquals(1, p.getHeaderSkip());
+    assertEquals(100000, p.getVerticalSpillThreshold());
+    assertNull(p.getRecordBoundary());
+    assertNull(p.getColumnWidths());
+  }
+
+  @Test
+  public void testColumnWidths() throws Exception {
+    prop.setProperty("column_widths", "4,3,5");
+    final ParseProfile p = ParseProfile.getProfile(createSourceFile("f1.txt"), "tp", "st", "sn", LOG);
+    assertEquals(3, p.getColumnWidths().size());
+  }
+
+  @Test
+  public void testRecordBoundary() throws Exception {
+    prop.setProperty("record_boundary", "#NODE (.+)");
+    final ParseProfile p = ParseProfile.getProfile(createSourceFile("f1.txt"), "tp", "st", "sn", LOG);
+    assertTrue(p.getRecordBoundary().matcher("#NODE ERBS1").matches());
+  }
+
+  @Test
+  public void testInvalidPattern() throws Exception {
+    prop.setProperty("fileNameFormat", "(.+");
+    prop.setProperty("column_delimiter", "");
+    final ParseProfile p = ParseProfile.getProfile(createSourceFile("f1.txt"), "tp", "st", "sn", LOG);
+    assertEquals("(.+", p.getFileNameFormat());
+    assertNull(p.getFileNamePattern());
+    assertEquals("\t", p.getColDelim());
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testInvalidNumber() throws Exception {
+    prop.setProperty("header_skip", "x");
+    ParseProfile.getProfile(createSourceFile("f1.txt"), "tp", "st", "sn", LOG);
+  }
+
+  private SourceFile createSourceFile(final String name) throws Exception {
+    final Constructor<SourceFile> sourceFileC = SourceFile.class.getDeclaredConstructor(new Class[] { File.class, Properties.class,
+        RockFactory.class, RockFactory.class, ParseSession.class, ParserDebugger.class, Logger.class });
+    sourceFileC.setAccessible(true);
+    return sourceFileC.newInstance(new Object[] { new File(name), prop, null, null, null, null, null });
+  }
+
+}
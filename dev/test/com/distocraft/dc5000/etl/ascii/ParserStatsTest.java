@@ -0,0 +1,111 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class ParserStatsTest {
+
+  @Test
+  public void testRegistered() throws Exception {
+    final ParserStats stats = ParserStats.getInstance("DC_E_TEST", "Adapter_DC_E_TEST_ascii", "w,1");
+    assertSame(stats, ParserStats.getInstance("DC_E_TEST", "Adapter_DC_E_TEST_ascii", "w,1"));
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName(ParserStats.DOMAIN + ":type=ASCIIParser,techPack=DC_E_TEST,set=Adapter_DC_E_TEST_ascii,worker=w_1");
+    assertTrue(server.isRegistered(name));
+
+    stats.fileStarted();
+    assertEquals(1L, server.getAttribute(name, "InFlightFiles"));
+    stats.fileFinished(100, 10, 5000000);
+    assertEquals(0L, server.getAttribute(name, "InFlightFiles"));
+    assertEquals(100L, server.getAttribute(name, "Bytes"));
+    assertEquals(5L, server.getAttribute(name, "FileLatencyP99"));
+    assertTrue(stats.getRowCostP50() >= 500000 && stats.getRowCostP50() < 510000);
+
+    // counters of the FLS dispatcher of the JVM, zero until FLS is used
+    final FlsDispatcher dispatcher = FlsDispatcher.getStarted();
+    assertEquals(dispatcher == null ? 0L : dispatcher.getDropped(), server.getAttribute(name, "FlsDropped"));
+    assertEquals(dispatcher == null ? 0L : dispatcher.getQueueLength(), server.getAttribute(name, "FlsQueueLength"));
+  }
+
+  @Test
+  public void testRecorder() {
+    final ParserStats stats = new ParserStats("test");
+    final ParserStats.Recorder recorder = new ParserStats.Recorder(stats);
+
+    recorder.add(ParserStats.Stage.SCAN, 10, 1000);
+    recorder.add(ParserStats.Stage.SAVE, 10, 5000000);
+    final long start = System.nanoTime();
+    assertTrue(recorder.since(ParserStats.Stage.TOKENIZE, start) >= start);
+    recorder.rowWritten();
+    recorder.rowWritten();
+    recorder.lineSkipped(RejectReason.WRITE_FAILED);
+    recorder.lineSkipped(RejectReason.WIDER_THAN_HEADER);
+    recorder.lineSkipped(RejectReason.WIDER_THAN_HEADER);
+
+    // nothing is visible before publish
+    assertEquals(0, stats.getRows());
+    assertEquals("", stats.getSlowestStage());
+
+    recorder.publish();
+    assertEquals(2, stats.getRows());
+    assertEquals(3, stats.getSkippedLines());
+    assertEquals(2, stats.getSkippedLines(RejectReason.WIDER_THAN_HEADER));
+    assertEquals("WIDER_THAN_HEADER 2, WRITE_FAILED 1", stats.getRejectSummary());
+
+    recorder.dictionaryLookups(3, 1);
+    assertEquals(3, stats.getDictionaryHits());
+    assertEquals(75, stats.getDictionaryHitRate());
+    assertEquals(10, stats.getStageCount(ParserStats.Stage.SCAN));
+    assertEquals(1000, stats.getStageNanos(ParserStats.Stage.SCAN));
+    assertEquals(1, stats.getStageCount(ParserStats.Stage.TOKENIZE));
+    assertEquals(5, stats.getSaveTime());
+    assertEquals("SAVE", stats.getSlowestStage());
+    assertTrue(stats.getStageSummary(), stats.getStageSummary().contains("SAVE 5 ms/10 (500000 ns)"));
+
+    // published values are not added twice
+    recorder.publish();
+    assertEquals(2, stats.getRows());
+
+    stats.reset();
+    assertEquals(0, stats.getRows());
+    assertEquals(0, stats.getSaveTime());
+    assertEquals("", stats.getRejectSummary());
+  }
+
+  @Test
+  public void testSampledRows() throws Exception {
+    final ParserStats stats = new ParserStats("test");
+    final ParserStats.Recorder recorder = new ParserStats.Recorder(stats);
+    final ParserStats.RowSampler sampler = new ParserStats.RowSampler();
+
+    int timedRows = 0;
+    for (int i = 0; i < 4 * ParserStats.RowSampler.SAMPLE_ROWS; i++) {
+      final boolean timed = sampler.timeRow();
+      // the first row is timed, and then one of every sample
+      assertEquals(i % ParserStats.RowSampler.SAMPLE_ROWS == 0, timed);
+      final long start = timed ? System.nanoTime() : 0;
+      if (timed) {
+        timedRows++;
+        Thread.sleep(1);
+      }
+      final long now = recorder.sample(ParserStats.Stage.SAVE, start, timed);
+      assertEquals(timed, now != 0);
+    }
+    assertEquals(4, timedRows);
+
+    recorder.publish();
+    // every row is counted, the times of the timed rows are counted for all rows of their sample
+    assertEquals(4 * ParserStats.RowSampler.SAMPLE_ROWS, stats.getStageCount(ParserStats.Stage.SAVE));
+    assertTrue(stats.getSaveTime() >= 4 * ParserStats.RowSampler.SAMPLE_ROWS);
+  }
+
+}
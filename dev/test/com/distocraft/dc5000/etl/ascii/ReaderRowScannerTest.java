@@ -0,0 +1,128 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ReaderRowScannerTest {
+
+  @Test
+  public void testRowsAndLastRow() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new StringReader("a|b\nc|d\ne|f"), Delimiter.compile("\n"), -1, 10000);
+    assertEquals("a|b", rs.nextRow());
+    assertEquals("c|d", rs.nextRow());
+    assertEquals("e|f", rs.nextRow());
+    assertNull(rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testTrailingDelimiter() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new StringReader("a\nb\n"), Delimiter.compile("\n"), -1, 10000);
+    assertEquals("a", rs.nextRow());
+    assertEquals("b", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new StringReader(""), Delimiter.compile("\n"), -1, 10000);
+    assertEquals("", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testBomIsRemoved() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new StringReader("\uFEFFh1|h2\r\nv1|v2\r\n"), Delimiter.compile("\r\n"), -1, 10000);
+    assertEquals("h1|h2", rs.nextRow());
+    assertEquals("v1|v2", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testDelimiterSplitBetweenReads() throws Exception {
+    // buffer of 16 characters ends between \r and \n of the first row
+    final RowScanner rs = new ReaderRowScanner(new StringReader("0123456789abcde\r\nnext\r\nlast"), Delimiter.compile("\r\n"), -1, 16);
+    assertEquals("0123456789abcde", rs.nextRow());
+    assertEquals("next", rs.nextRow());
+    assertEquals("last", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testRowLongerThanBuffer() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      sb.append(i % 10);
+    }
+    final String longRow = sb.toString();
+    final RowScanner rs = new ReaderRowScanner(new StringReader(longRow + "\n" + longRow + "\nx"), Delimiter.compile("\n"), -1, 16);
+    assertEquals(longRow, rs.nextRow());
+    assertEquals(longRow, rs.nextRow());
+    assertEquals("x", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testRegexDelimiterIsNotCutAtBufferEnd() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new OneCharReader("abc\n\n\ndef\n"), Delimiter.compile("\n+"), -1, 16);
+    assertEquals("abc", rs.nextRow());
+    assertEquals("def", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testConfiguredDelimiterSize() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new StringReader("a\n\rb\n\rc"), Delimiter.compile("\n"), 2, 10000);
+    assertEquals("a", rs.nextRow());
+    assertEquals("b", rs.nextRow());
+    assertEquals("c", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testConfiguredDelimiterSizeAtBufferEnd() throws Exception {
+    // buffer of 16 characters ends with the \n of the first row, the \r removed with it is read later
+    final RowScanner rs = new ReaderRowScanner(new StringReader("0123456789abcde\n\rnext\n\rlast"), Delimiter.compile("\n"), 2, 16);
+    assertEquals("0123456789abcde", rs.nextRow());
+    assertEquals("next", rs.nextRow());
+    assertEquals("last", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  @Test
+  public void testOnlyReadCharactersAreUsed() throws Exception {
+    final RowScanner rs = new ReaderRowScanner(new OneCharReader("ab\ncd"), Delimiter.compile("\n"), -1, 10000);
+    assertEquals("ab", rs.nextRow());
+    assertEquals("cd", rs.nextRow());
+    assertNull(rs.nextRow());
+  }
+
+  /**
+   * Reader that returns one character per read call.
+   */
+  private static class OneCharReader extends Reader {
+
+    private final StringReader delegate;
+
+    OneCharReader(final String data) {
+      this.delegate = new StringReader(data);
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+      return delegate.read(cbuf, off, Math.min(len, 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+
+}
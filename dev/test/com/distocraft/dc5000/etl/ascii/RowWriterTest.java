@@ -0,0 +1,148 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+import com.distocraft.dc5000.repository.cache.DFormat;
+
+public class RowWriterTest {
+
+  private static final Logger LOG = Logger.getLogger("etl.Test");
+
+  @Test
+  public void testRowsAreWritten() throws Exception {
+    final TestMeasurementFile mFile = new TestMeasurementFile();
+    final ColumnPlan plan = ColumnPlan.create(Arrays.asList("A", "B"), ASCIIParser.DATATIME_SKIPPED, "",
+        ASCIIParser.ROW_WIDTH_DEFAULT);
+    final ParserStats stats = new ParserStats("RowWriterTest");
+    final RowWriter writer = writer(mFile, plan, stats);
+    writer.setConstant("filename", "f1");
+
+    writer.write(new String[] { "1", "2" }, 2, "201801011200", "1\t2", 0, -1);
+    assertEquals(1, mFile.rows.size());
+    writer.write(new String[] { "3" }, 1, null, "3", 1, -1);
+    assertEquals(2, mFile.rows.size());
+
+    final Map<String, String> first = mFile.rows.get(0);
+    assertEquals("1", first.get("A"));
+    assertEquals("2", first.get("B"));
+    assertEquals("201801011200", first.get("DATETIME_ID"));
+    assertEquals("f1", first.get("filename"));
+
+    final Map<String, String> second = mFile.rows.get(1);
+    assertEquals("3", second.get("A"));
+    assertFalse(second.containsKey("B"));
+    assertFalse(second.containsKey("DATETIME_ID"));
+    assertEquals("f1", second.get("filename"));
+    assertEquals(2, writer.getWritten());
+
+    // rows are counted in the stats of the parser
+    writer.publish();
+    assertEquals(2, stats.getRows());
+  }
+
+  @Test
+  public void testFailingRowIsSkipped() throws Exception {
+    final TestMeasurementFile mFile = new TestMeasurementFile();
+    mFile.failOn = 0;
+    final ColumnPlan plan = ColumnPlan.create(null, ASCIIParser.DATATIME_SKIPPED, "", ASCIIParser.ROW_WIDTH_DEFAULT);
+    plan.columnsToWrite(2);
+    final ParserStats stats = new ParserStats("RowWriterTest");
+    final RowWriter writer = writer(mFile, plan, stats);
+
+    writer.write(new String[] { "1", "2" }, 2, null, null, 0, -1);
+    writer.write(new String[] { "3", "4" }, 2, null, "3\t4", 1, -1);
+    writer.publish();
+
+    assertEquals(1, mFile.rows.size());
+    assertEquals("3", mFile.rows.get(0).get("0"));
+    assertEquals(1, writer.getWritten());
+    assertEquals(1, stats.getSkippedLines(RejectReason.WRITE_FAILED));
+  }
+
+  @Test
+  public void testConstantsAreWrittenToEveryRow() throws Exception {
+    final TestMeasurementFile mFile = new TestMeasurementFile();
+    mFile.failOn = 1;
+    final ColumnPlan plan = ColumnPlan.create(Arrays.asList("A", "filename"), ASCIIParser.DATATIME_FROM_FILENAME, "",
+        ASCIIParser.ROW_WIDTH_DEFAULT);
+    final RowWriter writer = writer(mFile, plan, new ParserStats("RowWriterTest"));
+    writer.setConstant("filename", "f1");
+    writer.setConstant("DATETIME_ID", "201801011200");
+
+    writer.write(new String[] { "1", "x" }, 2, null, "1\tx", 0, -1);
+    writer.write(new String[] { "2", "y" }, 2, null, "2\ty", 1, -1);
+    writer.write(new String[] { "3" }, 1, "201901011200", "3", 2, -1);
+
+    assertEquals(2, mFile.rows.size());
+    for (final Map<String, String> row : mFile.rows) {
+      // constants have precedence over the columns
+      assertEquals("f1", row.get("filename"));
+      assertEquals("201801011200", row.get("DATETIME_ID"));
+    }
+    assertEquals("1", mFile.rows.get(0).get("A"));
+    assertEquals("3", mFile.rows.get(1).get("A"));
+    assertEquals(2, writer.getWritten());
+  }
+
+  private static RowWriter writer(final TestMeasurementFile mFile, final ColumnPlan plan, final ParserStats stats) {
+    return new RowWriter(mFile.proxy(), plan, new Diagnostics(LOG, 10, 1000, 0), new ParserStats.Recorder(stats),
+        new ParserStats.RowSampler());
+  }
+
+  /**
+   * Records saved rows. Created as a proxy, so only the methods used by RowWriter are implemented.
+   */
+  private static class TestMeasurementFile implements InvocationHandler {
+
+    private final List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+
+    private final Map<String, String> data = new HashMap<String, String>();
+
+    private int failOn = -1;
+
+    private int saves;
+
+    private MeasurementFile proxy() {
+      return (MeasurementFile) Proxy.newProxyInstance(MeasurementFile.class.getClassLoader(), new Class[] { MeasurementFile.class }, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      final String name = method.getName();
+      if ("addData".equals(name) && args.length == 1) {
+        data.putAll((Map<String, String>) args[0]);
+      } else if ("addData".equals(name)) {
+        data.put((String) args[0], (String) args[1]);
+      } else if ("saveData".equals(name)) {
+        try {
+          if (saves++ == failOn) {
+            throw new Exception("test failure");
+          }
+          rows.add(new HashMap<String, String>(data));
+        } finally {
+          data.clear();
+        }
+      } else if ("isOpen".equals(name)) {
+        return Boolean.TRUE;
+      } else if ("getDataformat".equals(name)) {
+        return new DFormat("ifname", "tid", "dfid", "fname", "trID");
+      }
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ssc.rockfactory.RockFactory;
+
+import com.distocraft.dc5000.etl.parser.ParseSession;
+import com.distocraft.dc5000.etl.parser.ParserDebugger;
+import com.distocraft.dc5000.etl.parser.SourceFile;
+
+public class SourceFilePrefetcherTest {
+
+  private static final Logger LOG = Logger.getLogger("etl.Test");
+
+  private final List<File> files = new ArrayList<File>();
+
+  @After
+  public void tearDown() {
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testFilesInOrder() throws Exception {
+    final List<SourceFile> sourceFiles = new ArrayList<SourceFile>();
+    for (int i = 0; i < 10; i++) {
+      sourceFiles.add(createSourceFile("row " + i + "\n"));
+    }
+    final Source source = new Source(sourceFiles);
+    final SourceFilePrefetcher prefetcher = new SourceFilePrefetcher(source, 3, 1024, 4, LOG);
+    for (int i = 0; i < 10; i++) {
+      final SourceFilePrefetcher.Prefetched prefetched = prefetcher.next();
+      assertSame(sourceFiles.get(i), prefetched.getSourceFile());
+      assertTrue(prefetched.hasData());
+      assertEquals("row " + i + "\n", read(prefetched.openStream()));
+      prefetched.release();
+      assertFalse(prefetched.hasData());
+    }
+    assertNull(prefetcher.next());
+    // the end is seen by every parser
+    assertNull(prefetcher.next());
+    assertTrue(prefetcher.close().isEmpty());
+  }
+
+  @Test
+  public void testLargeFileIsNotRead() throws Exception {
+    final char[] large = new char[2000];
+    Arrays.fill(large, 'x');
+    final SourceFile small = createSourceFile("small");
+    final SourceFile big = createSourceFile(new String(large));
+    final SourceFilePrefetcher prefetcher = new SourceFilePrefetcher(new Source(Arrays.asList(small, big, small)), 2, 1024, 1, LOG);
+
+    assertTrue(prefetcher.next().hasData());
+    final SourceFilePrefetcher.Prefetched prefetched = prefetcher.next();
+    assertSame(big, prefetched.getSourceFile());
+    assertFalse(prefetched.hasData());
+    assertTrue(prefetcher.next().hasData());
+    assertNull(prefetcher.next());
+    prefetcher.close();
+  }
+
+  @Test
+  public void testCloseReturnsFetchedFiles() throws Exception {
+    final List<SourceFile> sourceFiles = new ArrayList<SourceFile>();
+    for (int i = 0; i < 6; i++) {
+      sourceFiles.add(createSourceFile("row " + i));
+    }
+    final Source source = new Source(sourceFiles);
+    final SourceFilePrefetcher prefetcher = new SourceFilePrefetcher(source, 2, 1024, 1, LOG);
+    assertSame(sourceFiles.get(0), prefetcher.next().getSourceFile());
+
+    // two files are queued and the fetching thread waits with the fourth one
+    final long timeout = System.currentTimeMillis() + 10000;
+    while (source.getTaken() < 4 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertEquals(4, source.getTaken());
+
+    assertEquals(sourceFiles.subList(1, 4), prefetcher.close());
+    assertEquals(4, source.getTaken());
+  }
+
+  @Test
+  public void testBufferSize() throws Exception {
+    final SourceFilePrefetcher prefetcher = new SourceFilePrefetcher(new Source(new ArrayList<SourceFile>()), 1, 100000, 1, LOG);
+    assertEquals(SourceFilePrefetcher.MIN_BUFFER_SIZE, prefetcher.bufferSize(0));
+    assertEquals(8192, prefetcher.bufferSize(5000));
+    assertEquals(8192, prefetcher.bufferSize(8191));
+    assertEquals(16384, prefetcher.bufferSize(8192));
+    assertEquals(100001, prefetcher.bufferSize(99000));
+    assertEquals(100001, prefetcher.bufferSize(100000));
+    assertNull(prefetcher.next());
+    prefetcher.close();
+  }
+
+  private SourceFile createSourceFile(final String content) throws Exception {
+    final File file = File.createTempFile("SourceFilePrefetcherTest", ".txt");
+    files.add(file);
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    final Constructor<SourceFile> sourceFileC = SourceFile.class.getDeclaredConstructor(new Class[] { File.class, Properties.class,
+        RockFactory.class, RockFactory.class, ParseSession.class, ParserDebugger.class, Logger.class });
+    sourceFileC.setAccessible(true);
+    return sourceFileC.newInstance(new Object[] { file, new Properties(), null, null, null, null, null });
+  }
+
+  private static String read(final InputStream in) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1) {
+      out.write(b);
+    }
+    return out.toString("UTF-8");
+  }
+
+  /**
+   * Gives the files of a list and counts the files taken.
+   */
+  private static class Source implements SourceFilePrefetcher.FileSource {
+
+    private final List<SourceFile> sourceFiles;
+
+    private int taken;
+
+    Source(final List<SourceFile> sourceFiles) {
+      this.sourceFiles = sourceFiles;
+    }
+
+    @Override
+    public synchronized SourceFile next() {
+      return taken < sourceFiles.size() ? sourceFiles.get(taken++) : null;
+    }
+
+    synchronized int getTaken() {
+      return taken;
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SpillListTest {
+
+  @Test
+  public void testValuesInMemory() throws Exception {
+    final SpillList list = new SpillList(0);
+    for (int i = 0; i < 1000; i++) {
+      list.add("v" + i);
+    }
+    assertEquals(1000, list.size());
+    assertEquals(0, list.getSpilled());
+    assertEquals("v999", toList(list).get(999));
+    list.close();
+    assertEquals(0, list.size());
+  }
+
+  @Test
+  public void testValuesAreSpilled() throws Exception {
+    final SpillList list = new SpillList(3);
+    final List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      final String value = i == 5 ? "" : "\u00e4" + i;
+      expected.add(value);
+      list.add(value);
+    }
+    assertEquals(10, list.size());
+    assertEquals(7, list.getSpilled());
+    assertEquals(expected, toList(list));
+    // iterated again after more values
+    list.add("last");
+    expected.add("last");
+    assertEquals(expected, toList(list));
+    list.close();
+    assertEquals(0, list.size());
+    assertFalse(list.iterator().hasNext());
+  }
+
+  @Test
+  public void testCloseClosesUnfinishedIterations() throws Exception {
+    final SpillList list = new SpillList(1);
+    for (int i = 0; i < 10; i++) {
+      list.add("v" + i);
+    }
+    // one iteration is finished, two stop in the values of the file
+    assertEquals(10, toList(list).size());
+    assertEquals(0, list.getOpenReaders());
+    for (int i = 0; i < 2; i++) {
+      final Iterator<String> it = list.iterator();
+      it.next();
+      assertEquals("v1", it.next());
+    }
+    assertEquals(2, list.getOpenReaders());
+    list.close();
+    assertEquals(0, list.getOpenReaders());
+  }
+
+  private static List<String> toList(final SpillList list) {
+    final List<String> result = new ArrayList<String>();
+    final Iterator<String> it = list.iterator();
+    while (it.hasNext()) {
+      result.add(it.next());
+    }
+    return result;
+  }
+
+}
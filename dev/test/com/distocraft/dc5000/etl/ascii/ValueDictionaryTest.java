@@ -0,0 +1,62 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ValueDictionaryTest {
+
+  @Test
+  public void testCanonicalValues() {
+    final ValueDictionary dictionary = new ValueDictionary(100);
+    assertEquals(128, dictionary.getCapacity());
+
+    final char[] chars = "ERBS|0|ERBS".toCharArray();
+    final String first = dictionary.get(chars, 0, 4);
+    assertEquals("ERBS", first);
+    assertSame(first, dictionary.get(chars, 7, 11));
+    assertSame(first, dictionary.get(new String("ERBS")));
+    assertEquals("0", dictionary.get(chars, 5, 6));
+    assertSame("", dictionary.get(chars, 4, 4));
+    assertEquals(2, dictionary.getHits());
+    assertEquals(2, dictionary.getMisses());
+
+    final String stored = new String("RNC");
+    assertSame(stored, dictionary.get(stored));
+    assertSame(stored, dictionary.get("RNC".toCharArray(), 0, 3));
+
+    dictionary.resetCounters();
+    assertEquals(0, dictionary.getHits());
+    assertSame(first, dictionary.get(new String("ERBS")));
+  }
+
+  @Test
+  public void testLongValuesAreNotStored() {
+    final ValueDictionary dictionary = new ValueDictionary(16);
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i <= ValueDictionary.MAX_VALUE_LENGTH; i++) {
+      sb.append('x');
+    }
+    final char[] chars = sb.toString().toCharArray();
+    assertNotSame(dictionary.get(chars, 0, chars.length), dictionary.get(chars, 0, chars.length));
+    assertEquals(0, dictionary.getMisses());
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    final ValueDictionary dictionary = new ValueDictionary(16);
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(Integer.toString(i), dictionary.get(Integer.toString(i)));
+    }
+    assertEquals(16, dictionary.getCapacity());
+    assertEquals(10000, dictionary.getMisses());
+    assertEquals(10000 - 16, dictionary.getEvictions());
+
+    // recurring value stays after being replaced
+    final String value = dictionary.get("9999");
+    assertSame(value, dictionary.get(new String("9999")));
+  }
+
+}
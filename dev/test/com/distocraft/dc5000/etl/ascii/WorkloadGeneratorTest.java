@@ -0,0 +1,134 @@
+package com.distocraft.dc5000.etl.ascii;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkloadGeneratorTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("WorkloadGeneratorTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    delete(dir);
+  }
+
+  @Test
+  public void testSameSeedSameFiles() throws Exception {
+    final File a = new File(dir, "a");
+    final File b = new File(dir, "b");
+    final File c = new File(dir, "c");
+    a.mkdir();
+    b.mkdir();
+    c.mkdir();
+    new WorkloadGenerator(7).horizontal(a, 1, 50, 10, "regex", false, false);
+    new WorkloadGenerator(7).horizontal(b, 1, 50, 10, "regex", false, false);
+    new WorkloadGenerator(8).horizontal(c, 1, 50, 10, "regex", false, false);
+
+    final String name = a.list()[0].equals(WorkloadGenerator.PROPERTIES_FILE) ? a.list()[1] : a.list()[0];
+    final byte[] first = Files.readAllBytes(new File(a, name).toPath());
+    assertTrue(Arrays.equals(first, Files.readAllBytes(new File(b, name).toPath())));
+    assertFalse(Arrays.equals(first, Files.readAllBytes(new File(c, name).toPath())));
+  }
+
+  @Test
+  public void testHorizontal() throws Exception {
+    final Properties p = new WorkloadGenerator(1).horizontal(dir, 2, 20, 2500, "pipe", true, true);
+    assertEquals(p, load());
+    assertEquals("\r\n", p.getProperty("row_delimiter"));
+    assertEquals("DATE_TIME", p.getProperty("datatime_column"));
+
+    final File file = new File(dir, "A20260101.0000+0000-0015+0000_horizontal_1.txt");
+    final byte[] data = Files.readAllBytes(file.toPath());
+    assertEquals((byte) 0xEF, data[0]);
+    final String[] lines = new String(data, 3, data.length - 3, "UTF-8").split("\r\n");
+    assertEquals(21, lines.length);
+    final Delimiter delimiter = Delimiter.compile(p.getProperty("column_delimiter"));
+    assertEquals(WorkloadGenerator.MAX_COLUMNS, delimiter.split(lines[0]).length);
+    assertEquals("nodeFDN", delimiter.split(lines[0])[1]);
+    assertTrue(delimiter.split(lines[5])[1].startsWith("SubNetwork="));
+  }
+
+  @Test
+  public void testRegexDelimiter() throws Exception {
+    final Properties p = new WorkloadGenerator(3).horizontal(dir, 1, 10, 2, "regex", false, false);
+    final String[] lines = new String(Files.readAllBytes(new File(dir, "A20260101.0000+0000-0015+0000_horizontal_0.txt").toPath()),
+        "UTF-8").split("\n");
+    assertEquals(Arrays.asList("pmCounter0", "pmCounter1"), Arrays.asList(lines[0].split(p.getProperty("column_delimiter"))));
+    assertEquals(2, lines[3].split(p.getProperty("column_delimiter"), -1).length);
+  }
+
+  @Test
+  public void testVertical() throws Exception {
+    final Properties p = new WorkloadGenerator(1).vertical(dir, 3, 4, 10);
+    assertEquals("true", p.getProperty("verticalTraversing"));
+
+    final Pattern nodeName = Pattern.compile(p.getProperty("fileNameFormat"));
+    int files = 0;
+    for (String name : dir.list()) {
+      if (!name.equals(WorkloadGenerator.PROPERTIES_FILE)) {
+        files++;
+        assertTrue(name, nodeName.matcher(name).matches());
+        final String[] lines = new String(Files.readAllBytes(new File(dir, name).toPath()), "UTF-8").split("\n");
+        assertEquals(2 + 10 + 4, lines.length);
+        assertTrue(lines[0].startsWith("FDN\t"));
+        assertTrue(lines[lines.length - 1].startsWith("FDN\t"));
+      }
+    }
+    assertEquals(3, files);
+  }
+
+  @Test
+  public void testRop() throws Exception {
+    final Properties p = new WorkloadGenerator(1).rop(dir, 1200, 2, 5);
+    assertEquals(1201, dir.list().length);
+    final Pattern tag = Pattern.compile(p.getProperty("tag_id"));
+    for (String name : dir.list()) {
+      if (!name.equals(WorkloadGenerator.PROPERTIES_FILE)) {
+        final Matcher m = tag.matcher(name);
+        assertTrue(name, m.find());
+        assertEquals("ERBS", m.group(1));
+      }
+    }
+  }
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  private Properties load() throws IOException {
+    final Properties p = new Properties();
+    final FileInputStream in = new FileInputStream(new File(dir, WorkloadGenerator.PROPERTIES_FILE));
+    try {
+      p.load(in);
+    } finally {
+      in.close();
+    }
+    return p;
+  }
+
+}